@@ -12,12 +12,19 @@
 
 package com.maxprograms.fluenta;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.text.ParseException;
+import java.util.Date;
 import java.util.List;
+import java.util.Set;
 import java.util.Vector;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -32,6 +39,7 @@ import com.maxprograms.fluenta.models.Memory;
 import com.maxprograms.fluenta.models.Project;
 import com.maxprograms.languages.Language;
 import com.maxprograms.languages.LanguageUtils;
+import com.maxprograms.utils.CancellationToken;
 import com.maxprograms.utils.FileUtils;
 import com.maxprograms.utils.SimpleLogger;
 
@@ -43,12 +51,23 @@ public class API {
 
 	public static int importMemory(long id, String tmxFile) throws IOException, SQLException, SAXException,
 			ParserConfigurationException, JSONException, ParseException, URISyntaxException {
+		return importMemory(id, tmxFile, false);
+	}
+
+	public static int importMemory(long id, String tmxFile, boolean verbose) throws IOException, SQLException,
+			SAXException, ParserConfigurationException, JSONException, ParseException, URISyntaxException {
+		return importMemory(id, tmxFile, verbose, new CancellationToken());
+	}
+
+	public static int importMemory(long id, String tmxFile, boolean verbose, CancellationToken token)
+			throws IOException, SQLException, SAXException, ParserConfigurationException, JSONException,
+			ParseException, URISyntaxException {
 		LocalController controller = new LocalController();
 		Memory memory = controller.getMemory(id);
 		if (memory == null) {
 			throw new IOException(Messages.getString("API.15"));
 		}
-		return controller.importTMX(memory, tmxFile);
+		return controller.importTMX(memory, tmxFile, new SimpleLogger(verbose, token));
 	}
 
 	public static void exportMemory(long id, String tmxFile) throws IOException, SQLException, SAXException,
@@ -61,9 +80,64 @@ public class API {
 		controller.exportTMX(memory, tmxFile);
 	}
 
+	public static int exportMemory(long id, String tmxFile, Set<String> languages, Date since, String project,
+			boolean compressed, boolean verbose) throws IOException, SQLException, SAXException,
+			ParserConfigurationException, JSONException, ParseException, URISyntaxException {
+		return exportMemory(id, tmxFile, languages, since, project, compressed, verbose, new CancellationToken());
+	}
+
+	public static int exportMemory(long id, String tmxFile, Set<String> languages, Date since, String project,
+			boolean compressed, boolean verbose, CancellationToken token) throws IOException, SQLException,
+			SAXException, ParserConfigurationException, JSONException, ParseException, URISyntaxException {
+		LocalController controller = new LocalController();
+		Memory memory = controller.getMemory(id);
+		if (memory == null) {
+			throw new IOException(Messages.getString("API.15"));
+		}
+		return controller.exportTMX(memory, tmxFile, languages, since, project, compressed,
+				new SimpleLogger(verbose, token));
+	}
+
+	public static int migrateMemory(long id, String engine) throws IOException, SQLException, SAXException,
+			ParserConfigurationException, JSONException, ParseException, URISyntaxException {
+		LocalController controller = new LocalController();
+		Memory memory = controller.getMemory(id);
+		if (memory == null) {
+			throw new IOException(Messages.getString("API.15"));
+		}
+		return controller.migrateMemory(memory, engine);
+	}
+
+	public static JSONObject benchmarkMemory(long id, int queries) throws IOException, SQLException, SAXException,
+			ParserConfigurationException, JSONException, ParseException, URISyntaxException {
+		LocalController controller = new LocalController();
+		Memory memory = controller.getMemory(id);
+		if (memory == null) {
+			throw new IOException(Messages.getString("API.15"));
+		}
+		return controller.benchmarkMemory(memory, queries);
+	}
+
+	public static JSONObject compactMemory(long id, String policy, boolean verbose) throws IOException, SQLException,
+			SAXException, ParserConfigurationException, JSONException, ParseException, URISyntaxException {
+		return compactMemory(id, policy, verbose, new CancellationToken());
+	}
+
+	public static JSONObject compactMemory(long id, String policy, boolean verbose, CancellationToken token)
+			throws IOException, SQLException, SAXException, ParserConfigurationException, JSONException,
+			ParseException, URISyntaxException {
+		LocalController controller = new LocalController();
+		Memory memory = controller.getMemory(id);
+		if (memory == null) {
+			throw new IOException(Messages.getString("API.15"));
+		}
+		return controller.compactMemory(memory, policy, new SimpleLogger(verbose, token));
+	}
+
 	private static void generateXLIFF(long id, String xliffFolder, String[] tgtLang, boolean useICE, boolean useTM,
 			boolean generateCount, boolean verbose, String ditaval, String version, boolean embedSkeleton,
-			boolean modifiedFilesOnly, boolean ignoreTrackedChanges, boolean ignoreSVG, boolean paragraphSegmentation)
+			boolean modifiedFilesOnly, boolean modifiedSegmentsOnly, boolean ignoreTrackedChanges, boolean ignoreSVG,
+			boolean paragraphSegmentation, CancellationToken token)
 			throws IOException, SAXException, ParserConfigurationException, URISyntaxException, SQLException,
 			JSONException, ParseException {
 		LocalController controller = new LocalController();
@@ -82,15 +156,16 @@ public class API {
 		for (int i = 0; i < tgtLang.length; i++) {
 			langs.add(LanguageUtils.getLanguage(tgtLang[i]));
 		}
-		SimpleLogger logger = new SimpleLogger(verbose);
+		SimpleLogger logger = new SimpleLogger(verbose, token);
 		controller.generateXliff(project, xliffFolder, langs, useICE, useTM, generateCount, ditaval, version,
-				embedSkeleton, modifiedFilesOnly, ignoreTrackedChanges, ignoreSVG, paragraphSegmentation, logger);
+				embedSkeleton, modifiedFilesOnly, modifiedSegmentsOnly, ignoreTrackedChanges, ignoreSVG,
+				paragraphSegmentation, logger);
 		controller.updateProject(project);
 	}
 
-	protected static void generateXLIFF(String jsonFile, boolean verbose) throws IOException, SAXException,
-			ParserConfigurationException, URISyntaxException, SQLException, JSONException,
-			ParseException {
+	protected static void generateXLIFF(String jsonFile, boolean verbose, CancellationToken token)
+			throws IOException, SAXException, ParserConfigurationException, URISyntaxException, SQLException,
+			JSONException, ParseException {
 		File projectFile = new File(jsonFile);
 		JSONObject jsonObject = FileUtils.readJSON(projectFile);
 		long id = jsonObject.getLong("id");
@@ -124,6 +199,10 @@ public class API {
 		if (jsonObject.has("modifiedFilesOnly")) {
 			modifiedFilesOnly = jsonObject.getBoolean("modifiedFilesOnly");
 		}
+		boolean modifiedSegmentsOnly = false;
+		if (jsonObject.has("modifiedSegmentsOnly")) {
+			modifiedSegmentsOnly = jsonObject.getBoolean("modifiedSegmentsOnly");
+		}
 		boolean ignoreTrackedChanges = false;
 		if (jsonObject.has("ignoreTrackedChanges")) {
 			ignoreTrackedChanges = jsonObject.getBoolean("ignoreTrackedChanges");
@@ -132,6 +211,9 @@ public class API {
 		if (jsonObject.has("ignoreSVG")) {
 			ignoreSVG = jsonObject.getBoolean("ignoreSVG");
 		}
+		if (jsonObject.has("timeout")) {
+			token.setTimeout(jsonObject.getLong("timeout") * 1000);
+		}
 		JSONArray tgtArray = jsonObject.getJSONArray("tgtLang");
 		String[] tgtLang = new String[tgtArray.length()];
 		for (int i = 0; i < tgtArray.length(); i++) {
@@ -139,11 +221,13 @@ public class API {
 		}
 
 		generateXLIFF(id, xliffFolder, tgtLang, useICE, useTM, generateCount, verbose, ditaval, version,
-				embedSkeleton, modifiedFilesOnly, ignoreTrackedChanges, ignoreSVG, paragraphSegmentation);
+				embedSkeleton, modifiedFilesOnly, modifiedSegmentsOnly, ignoreTrackedChanges, ignoreSVG,
+				paragraphSegmentation, token);
 	}
 
-	private static void importXLIFF(long id, String xliffFile, String outputFolder, boolean updateTM,
-			boolean acceptUnapproved, boolean ignoreTagErrors, boolean verbose)
+	private static JSONArray importXLIFF(long id, String xliffFile, String outputFolder, boolean updateTM,
+			boolean acceptUnapproved, boolean ignoreTagErrors, boolean exportTmx, boolean incrementalMerge,
+			int maxErrors, boolean verbose, CancellationToken token)
 			throws IOException, NumberFormatException, SAXException, ParserConfigurationException, SQLException,
 			URISyntaxException, JSONException, ParseException {
 		LocalController controller = new LocalController();
@@ -155,14 +239,16 @@ public class API {
 		if (!f.exists()) {
 			f.mkdirs();
 		}
-		SimpleLogger logger = new SimpleLogger(verbose);
-		controller.importXliff(project, xliffFile, outputFolder, updateTM, acceptUnapproved, ignoreTagErrors,
-				logger);
+		controller.setIncrementalMerge(incrementalMerge);
+		controller.setMaxTagErrors(maxErrors);
+		SimpleLogger logger = new SimpleLogger(verbose, token);
+		return controller.importXliff(project, xliffFile, outputFolder, updateTM, acceptUnapproved,
+				ignoreTagErrors, exportTmx, logger);
 	}
 
-	protected static void importXLIFF(String jsonFile, boolean verbose) throws IOException, NumberFormatException,
-			SAXException, ParserConfigurationException, SQLException, URISyntaxException, JSONException,
-			ParseException {
+	protected static JSONArray importXLIFF(String jsonFile, boolean verbose, CancellationToken token)
+			throws IOException, NumberFormatException, SAXException, ParserConfigurationException, SQLException,
+			URISyntaxException, JSONException, ParseException {
 		File projectFile = new File(jsonFile);
 		JSONObject jsonObject = FileUtils.readJSON(projectFile);
 		long id = jsonObject.getLong("id");
@@ -177,6 +263,94 @@ public class API {
 		if (jsonObject.has("ignoreTagErrors")) {
 			ignoreTagErrors = jsonObject.getBoolean("ignoreTagErrors");
 		}
-		importXLIFF(id, xliffFile, outputFolder, updateTM, acceptUnapproved, ignoreTagErrors, verbose);
+		boolean exportTmx = false;
+		if (jsonObject.has("exportTMX")) {
+			exportTmx = jsonObject.getBoolean("exportTMX");
+		}
+		boolean incrementalMerge = false;
+		if (jsonObject.has("incrementalMerge")) {
+			incrementalMerge = jsonObject.getBoolean("incrementalMerge");
+		}
+		int maxErrors = -1;
+		if (jsonObject.has("maxErrors")) {
+			maxErrors = jsonObject.getInt("maxErrors");
+		}
+		if (jsonObject.has("timeout")) {
+			token.setTimeout(jsonObject.getLong("timeout") * 1000);
+		}
+		JSONArray tagErrors = importXLIFF(id, xliffFile, outputFolder, updateTM, acceptUnapproved, ignoreTagErrors,
+				exportTmx, incrementalMerge, maxErrors, verbose, token);
+		if (jsonObject.has("tagErrorsFile")) {
+			writeNDJSON(tagErrors, new File(jsonObject.getString("tagErrorsFile")));
+		}
+		return tagErrors;
+	}
+
+	protected static JSONArray importXLIFFs(String jsonFile, boolean verbose, CancellationToken token)
+			throws IOException, SQLException, JSONException, ParseException {
+		File projectFile = new File(jsonFile);
+		JSONObject jsonObject = FileUtils.readJSON(projectFile);
+		long id = jsonObject.getLong("id");
+		JSONArray xliffFiles = jsonObject.getJSONArray("xliffFiles");
+		List<String> xliffDocuments = new Vector<>();
+		List<String> outputFolders = new Vector<>();
+		for (int i = 0; i < xliffFiles.length(); i++) {
+			JSONObject entry = xliffFiles.getJSONObject(i);
+			xliffDocuments.add(entry.getString("xliffFile"));
+			String outputFolder = entry.getString("outputFolder");
+			File f = new File(outputFolder);
+			if (!f.exists()) {
+				f.mkdirs();
+			}
+			outputFolders.add(outputFolder);
+		}
+		boolean updateTM = jsonObject.getBoolean("updateTM");
+		boolean acceptUnapproved = false;
+		if (jsonObject.has("acceptUnapproved")) {
+			acceptUnapproved = jsonObject.getBoolean("acceptUnapproved");
+		}
+		boolean ignoreTagErrors = false;
+		if (jsonObject.has("ignoreTagErrors")) {
+			ignoreTagErrors = jsonObject.getBoolean("ignoreTagErrors");
+		}
+		boolean exportTmx = false;
+		if (jsonObject.has("exportTMX")) {
+			exportTmx = jsonObject.getBoolean("exportTMX");
+		}
+		boolean incrementalMerge = false;
+		if (jsonObject.has("incrementalMerge")) {
+			incrementalMerge = jsonObject.getBoolean("incrementalMerge");
+		}
+		int maxErrors = -1;
+		if (jsonObject.has("maxErrors")) {
+			maxErrors = jsonObject.getInt("maxErrors");
+		}
+		if (jsonObject.has("timeout")) {
+			token.setTimeout(jsonObject.getLong("timeout") * 1000);
+		}
+		LocalController controller = new LocalController();
+		Project project = controller.getProject(id);
+		if (project == null) {
+			throw new IOException(Messages.getString("API.17"));
+		}
+		controller.setIncrementalMerge(incrementalMerge);
+		controller.setMaxTagErrors(maxErrors);
+		SimpleLogger logger = new SimpleLogger(verbose, token);
+		JSONArray tagErrors = controller.importXliffs(project, xliffDocuments, outputFolders, updateTM,
+				acceptUnapproved, ignoreTagErrors, exportTmx, logger);
+		if (jsonObject.has("tagErrorsFile")) {
+			writeNDJSON(tagErrors, new File(jsonObject.getString("tagErrorsFile")));
+		}
+		return tagErrors;
+	}
+
+	private static void writeNDJSON(JSONArray array, File file) throws IOException {
+		try (Writer writer = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+			for (int i = 0; i < array.length(); i++) {
+				writer.write(array.getJSONObject(i).toString());
+				writer.write('\n');
+			}
+		}
 	}
 }
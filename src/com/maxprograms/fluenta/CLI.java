@@ -26,7 +26,13 @@ import java.nio.file.Files;
 import java.sql.SQLException;
 import java.text.MessageFormat;
 import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -34,6 +40,9 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.xml.sax.SAXException;
 
+import com.maxprograms.fluenta.controllers.TmCompactor;
+import com.maxprograms.fluenta.controllers.TmUpdateQueue;
+import com.maxprograms.utils.CancellationToken;
 import com.maxprograms.utils.Preferences;
 
 public class CLI {
@@ -45,15 +54,32 @@ public class CLI {
 
 	protected static Logger logger = System.getLogger(CLI.class.getName());
 
+	// seconds a cancelled job has to unwind before the process ends
+	private static final long UNWIND_TIMEOUT = 60;
+	private static CancellationToken token = new CancellationToken();
+	private static CountDownLatch finished = new CountDownLatch(1);
+
 	public static void main(String[] args) {
 		boolean generateXLIFF = false;
 		String genXliffFile = null;
 		boolean importXLIFF = false;
 		String xliffFile = null;
+		boolean importXLIFFs = false;
+		String batchFile = null;
 		boolean importTmx = false;
 		boolean exportTmx = false;
 		String memId = null;
 		String tmxFile = null;
+		boolean migrateTm = false;
+		String engine = null;
+		boolean benchmarkTm = false;
+		int queries = 1000;
+		boolean compactTm = false;
+		String policy = TmCompactor.NEWEST;
+		Set<String> languages = null;
+		Date since = null;
+		String project = null;
+		boolean gzip = false;
 		boolean verbose = false;
 
 		if (args.length == 0) {
@@ -68,6 +94,20 @@ public class CLI {
 			logger.log(Level.ERROR, Messages.getString("CLI.1"), e1);
 			System.exit(3);
 		}
+		// an interrupted or terminated job is cancelled and given time to close its
+		// memories and delete its temporary files
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			if (finished.getCount() == 0) {
+				return;
+			}
+			logger.log(Level.WARNING, Messages.getString("CLI.22"));
+			token.cancel();
+			try {
+				finished.await(UNWIND_TIMEOUT, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}));
 
 		for (int i = 0; i < args.length; i++) {
 			if (args[i].equals("-version")) {
@@ -75,7 +115,7 @@ public class CLI {
 				json.put("version", Constants.VERSION);
 				json.put("build", Constants.BUILD);
 				System.out.println(json.toString(2));
-				System.exit(0);
+				exit(0);
 			}
 			if (args[i].equals("-about")) {
 				JSONObject json = new JSONObject();
@@ -91,7 +131,7 @@ public class CLI {
 						+ com.maxprograms.languages.Constants.BUILD);
 				json.put("xmljava", com.maxprograms.xml.Constants.VERSION + "-" + com.maxprograms.xml.Constants.BUILD);
 				System.out.println(json.toString(2));
-				System.exit(0);
+				exit(0);
 			}
 			if (args[i].equals("-generateXLIFF") && (i + 1) < args.length) {
 				generateXLIFF = true;
@@ -101,6 +141,10 @@ public class CLI {
 				importXLIFF = true;
 				xliffFile = args[i + 1];
 			}
+			if (args[i].equals("-importXLIFFs") && (i + 1) < args.length) {
+				importXLIFFs = true;
+				batchFile = args[i + 1];
+			}
 			if (args[i].equals("-importTmx") && (i + 1) < args.length) {
 				importTmx = true;
 				memId = args[i + 1];
@@ -112,26 +156,79 @@ public class CLI {
 			if (args[i].equals("-tmx") && (i + 1) < args.length) {
 				tmxFile = args[i + 1];
 			}
+			if (args[i].equals("-migrateTm") && (i + 1) < args.length) {
+				migrateTm = true;
+				memId = args[i + 1];
+			}
+			if (args[i].equals("-engine") && (i + 1) < args.length) {
+				engine = args[i + 1];
+			}
+			if (args[i].equals("-benchmarkTm") && (i + 1) < args.length) {
+				benchmarkTm = true;
+				memId = args[i + 1];
+			}
+			if (args[i].equals("-langs") && (i + 1) < args.length) {
+				languages = new TreeSet<>(Arrays.asList(args[i + 1].split(",")));
+			}
+			if (args[i].equals("-since") && (i + 1) < args.length) {
+				try {
+					since = new SimpleDateFormat("yyyy-MM-dd").parse(args[i + 1]);
+				} catch (ParseException e) {
+					MessageFormat mf = new MessageFormat(Messages.getString("CLI.16"));
+					logger.log(Level.ERROR, mf.format(new String[] { args[i + 1] }));
+					exit(3);
+				}
+			}
+			if (args[i].equals("-project") && (i + 1) < args.length) {
+				project = args[i + 1];
+			}
+			if (args[i].equals("-gzip")) {
+				gzip = true;
+			}
+			if (args[i].equals("-compactTm") && (i + 1) < args.length) {
+				compactTm = true;
+				memId = args[i + 1];
+			}
+			if (args[i].equals("-policy") && (i + 1) < args.length) {
+				policy = args[i + 1];
+			}
+			if (args[i].equals("-queries") && (i + 1) < args.length) {
+				try {
+					queries = Integer.parseInt(args[i + 1]);
+				} catch (NumberFormatException e) {
+					MessageFormat mf = new MessageFormat(Messages.getString("CLI.16"));
+					logger.log(Level.ERROR, mf.format(new String[] { args[i + 1] }));
+					exit(3);
+				}
+			}
 			if (args[i].equals("-verbose")) {
 				verbose = true;
 			}
 		}
 		if (generateXLIFF) {
 			try {
-				API.generateXLIFF(genXliffFile, verbose);
+				API.generateXLIFF(genXliffFile, verbose, token);
 			} catch (IOException | SAXException | ParserConfigurationException | URISyntaxException | SQLException
 					| JSONException | ParseException ioe) {
 				logger.log(Level.ERROR, Messages.getString("CLI.4"), ioe);
-				System.exit(3);
+				exit(3);
 			}
 		}
 		if (importXLIFF) {
 			try {
-				API.importXLIFF(xliffFile, verbose);
+				API.importXLIFF(xliffFile, verbose, token);
 			} catch (IOException | NumberFormatException | SAXException | ParserConfigurationException | SQLException
 					| URISyntaxException | JSONException | ParseException ioe) {
 				logger.log(Level.ERROR, Messages.getString("CLI.5"), ioe);
-				System.exit(3);
+				exit(3);
+			}
+		}
+		if (importXLIFFs) {
+			try {
+				API.importXLIFFs(batchFile, verbose, token);
+			} catch (IOException | SQLException | JSONException | ParseException ioe) {
+				logger.log(Level.ERROR, Messages.getString("CLI.5"), ioe);
+				exit(3);
 			}
 		}
 		if (importTmx) {
@@ -140,25 +237,25 @@ public class CLI {
 				id = Long.parseLong(memId);
 			} catch (NumberFormatException ex) {
 				logger.log(Level.ERROR, Messages.getString("CLI.9"));
-				System.exit(3);
+				exit(3);
 			}
 			if (tmxFile == null) {
 				logger.log(Level.ERROR, Messages.getString("CLI.10"));
-				System.exit(3);
+				exit(3);
 			}
 			File f = new File(tmxFile);
 			if (!f.exists()) {
 				logger.log(Level.ERROR, Messages.getString("CLI.11"));
-				System.exit(3);
+				exit(3);
 			}
 			try {
-				int imported = API.importMemory(id, tmxFile);
+				int imported = API.importMemory(id, tmxFile, verbose, token);
 				MessageFormat mf = new MessageFormat(Messages.getString("CLI.15"));
 				System.out.println(mf.format(new String[] { "" + imported }));
 			} catch (IOException | JSONException | SQLException | SAXException | ParserConfigurationException
 					| ParseException | URISyntaxException e) {
 				logger.log(Level.ERROR, e.getMessage());
-				System.exit(3);
+				exit(3);
 			}
 		}
 		if (exportTmx) {
@@ -167,24 +264,91 @@ public class CLI {
 				id = Long.parseLong(memId);
 			} catch (NumberFormatException ex) {
 				logger.log(Level.ERROR, Messages.getString("CLI.12"));
-				System.exit(3);
+				exit(3);
 			}
 			if (tmxFile == null) {
 				logger.log(Level.ERROR, Messages.getString("CLI.13"));
-				System.exit(3);
+				exit(3);
+			}
+			try {
+				int exported = API.exportMemory(id, tmxFile, languages, since, project,
+						gzip || tmxFile.endsWith(".gz"), verbose, token);
+				MessageFormat mf = new MessageFormat(Messages.getString("CLI.21"));
+				System.out.println(mf.format(new String[] { "" + exported }));
+			} catch (Exception e) {
+				logger.log(Level.ERROR, e.getMessage());
+				exit(3);
+			}
+		}
+		if (migrateTm) {
+			long id = 0;
+			try {
+				id = Long.parseLong(memId);
+			} catch (NumberFormatException ex) {
+				logger.log(Level.ERROR, Messages.getString("CLI.12"));
+				exit(3);
+			}
+			if (engine == null) {
+				logger.log(Level.ERROR, Messages.getString("CLI.19"));
+				exit(3);
+			}
+			try {
+				int migrated = API.migrateMemory(id, engine);
+				MessageFormat mf = new MessageFormat(Messages.getString("CLI.20"));
+				System.out.println(mf.format(new String[] { "" + migrated }));
+			} catch (Exception e) {
+				logger.log(Level.ERROR, e.getMessage());
+				exit(3);
+			}
+		}
+		if (benchmarkTm) {
+			long id = 0;
+			try {
+				id = Long.parseLong(memId);
+			} catch (NumberFormatException ex) {
+				logger.log(Level.ERROR, Messages.getString("CLI.12"));
+				exit(3);
 			}
 			try {
-				API.exportMemory(id, tmxFile);
+				System.out.println(API.benchmarkMemory(id, queries).toString(2));
 			} catch (Exception e) {
 				logger.log(Level.ERROR, e.getMessage());
-				System.exit(3);
+				exit(3);
+			}
+		}
+		if (compactTm) {
+			long id = 0;
+			try {
+				id = Long.parseLong(memId);
+			} catch (NumberFormatException ex) {
+				logger.log(Level.ERROR, Messages.getString("CLI.12"));
+				exit(3);
+			}
+			try {
+				System.out.println(API.compactMemory(id, policy, verbose, token).toString(2));
+			} catch (Exception e) {
+				logger.log(Level.ERROR, e.getMessage());
+				exit(3);
 			}
 		}
+		try {
+			// memory updates queued by imports are stored before releasing the lock
+			TmUpdateQueue.getInstance().flush();
+		} catch (IOException | SQLException | SAXException | ParserConfigurationException | URISyntaxException
+				| JSONException | ParseException e) {
+			logger.log(Level.ERROR, Messages.getString("CLI.18"), e);
+		}
 		try {
 			unlock();
 		} catch (IOException e) {
 			logger.log(Level.ERROR, Messages.getString("CLI.14"), e);
 		}
+		finished.countDown();
+	}
+
+	private static void exit(int status) {
+		finished.countDown();
+		System.exit(status);
 	}
 
 	private static void checkLock() throws IOException {
@@ -0,0 +1,365 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.SAXException;
+
+import com.maxprograms.utils.FileUtils;
+import com.maxprograms.utils.Preferences;
+import com.maxprograms.xml.Attribute;
+import com.maxprograms.xml.Document;
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.SAXBuilder;
+import com.maxprograms.xml.XMLNode;
+
+/**
+ * Stores the translated XLIFF of each build as a compressed skeleton whose
+ * trans-units and file headers are references into a content-addressed store
+ * shared by all builds and languages of a project. Identical segments are kept
+ * only once.
+ * <p>
+ * Layout inside <code>projects/&lt;id&gt;/archive</code>:
+ * <ul>
+ * <li><code>segments.pack</code>: deflated elements, appended in order</li>
+ * <li><code>segments.idx</code>: one line per element with SHA-256, offset and
+ * length in the pack</li>
+ * <li><code>&lt;lang&gt;/build_&lt;n&gt;.skl</code>: gzipped skeleton of a
+ * build</li>
+ * </ul>
+ */
+public class BuildArchive {
+
+	private static final String REF = "archive-ref";
+	private static final Pattern REF_PATTERN = Pattern.compile("<" + REF + " hash=\"([0-9a-f]{64})\"/>");
+
+	private File folder;
+	private File pack;
+	private File index;
+	private Map<String, long[]> entries;
+	private int units;
+
+	public BuildArchive(File projectFolder) throws IOException {
+		folder = new File(projectFolder, "archive");
+		pack = new File(folder, "segments.pack");
+		index = new File(folder, "segments.idx");
+		entries = new Hashtable<>();
+		loadIndex();
+	}
+
+	public static BuildArchive getInstance(long projectId) throws IOException {
+		Preferences preferences = Preferences.getInstance();
+		return new BuildArchive(new File(preferences.getProjectsFolder(), "" + projectId));
+	}
+
+	/**
+	 * Archives a build and returns the number of trans-units it contains.
+	 */
+	public int store(Document doc, String language, int build) throws IOException {
+		Element root = doc.getRootElement();
+		units = 0;
+		synchronized (BuildArchive.class) {
+			if (!folder.exists()) {
+				Files.createDirectories(folder.toPath());
+			}
+			// entries written by other instances since this one was created
+			loadIndex();
+			// drop a line left incomplete by an interrupted store
+			long complete = completeLength();
+			if (index.exists() && index.length() > complete) {
+				try (RandomAccessFile indexFile = new RandomAccessFile(index, "rw")) {
+					indexFile.setLength(complete);
+				}
+			}
+			try (RandomAccessFile packFile = new RandomAccessFile(pack, "rw");
+					Writer indexWriter = Files.newBufferedWriter(index.toPath(), StandardCharsets.UTF_8,
+							StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+				packFile.seek(packFile.length());
+				Element skeleton = skeleton(root, packFile, indexWriter);
+				File languageFolder = new File(folder, language);
+				if (!languageFolder.exists()) {
+					Files.createDirectories(languageFolder.toPath());
+				}
+				try (OutputStream out = new GZIPOutputStream(
+						new FileOutputStream(new File(languageFolder, "build_" + build + ".skl")))) {
+					out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n".getBytes(StandardCharsets.UTF_8));
+					out.write(skeleton.toString().getBytes(StandardCharsets.UTF_8));
+				}
+			}
+		}
+		return units;
+	}
+
+	/**
+	 * Writes the full XLIFF of an archived build.
+	 */
+	public void extract(String language, int build, File xliff) throws IOException {
+		try (OutputStream out = new FileOutputStream(xliff)) {
+			out.write(rebuild(language, build).getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	public Document load(String language, int build) throws IOException, SAXException, ParserConfigurationException {
+		SAXBuilder builder = new SAXBuilder();
+		return builder.build(new ByteArrayInputStream(rebuild(language, build).getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Returns the trans-units of an archived build grouped by the
+	 * <code>original</code> attribute of their file, in document order, without
+	 * rebuilding the whole document.
+	 */
+	public Map<String, List<Element>> getUnits(String language, int build)
+			throws IOException, SAXException, ParserConfigurationException {
+		SAXBuilder builder = new SAXBuilder();
+		Element root = builder.build(new ByteArrayInputStream(readSkeleton(language, build))).getRootElement();
+		StringBuilder namespaces = new StringBuilder();
+		List<Attribute> atts = root.getAttributes();
+		for (int i = 0; i < atts.size(); i++) {
+			if (atts.get(i).getName().startsWith("xmlns")) {
+				namespaces.append(' ');
+				namespaces.append(atts.get(i).toString());
+			}
+		}
+		Map<String, List<Element>> result = new Hashtable<>();
+		try (RandomAccessFile packFile = new RandomAccessFile(pack, "r")) {
+			List<Element> files = root.getChildren("file");
+			for (int i = 0; i < files.size(); i++) {
+				List<Element> refs = new Vector<>();
+				collectRefs(files.get(i), refs);
+				StringBuilder sb = new StringBuilder();
+				sb.append("<units");
+				sb.append(namespaces);
+				sb.append('>');
+				for (int j = 0; j < refs.size(); j++) {
+					sb.append(read(packFile, refs.get(j).getAttributeValue("hash")));
+				}
+				sb.append("</units>");
+				Element units = builder.build(new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8)))
+						.getRootElement();
+				result.put(files.get(i).getAttributeValue("original"), units.getChildren("trans-unit"));
+			}
+		}
+		return result;
+	}
+
+	private String rebuild(String language, int build) throws IOException {
+		String skeleton = new String(readSkeleton(language, build), StandardCharsets.UTF_8);
+		StringBuilder sb = new StringBuilder();
+		try (RandomAccessFile packFile = new RandomAccessFile(pack, "r")) {
+			Matcher matcher = REF_PATTERN.matcher(skeleton);
+			int last = 0;
+			while (matcher.find()) {
+				sb.append(skeleton, last, matcher.start());
+				sb.append(read(packFile, matcher.group(1)));
+				last = matcher.end();
+			}
+			sb.append(skeleton, last, skeleton.length());
+		}
+		return sb.toString();
+	}
+
+	private byte[] readSkeleton(String language, int build) throws IOException {
+		File skeleton = getFile(language, build);
+		if (!skeleton.exists()) {
+			throw new IOException(Messages.getString("BuildArchive.0"));
+		}
+		try (InputStream in = new GZIPInputStream(new FileInputStream(skeleton))) {
+			return in.readAllBytes();
+		}
+	}
+
+	public File getFile(String language, int build) {
+		return new File(new File(folder, language), "build_" + build + ".skl");
+	}
+
+	private Element skeleton(Element e, RandomAccessFile packFile, Writer indexWriter) throws IOException {
+		if (e.getName().equals("trans-unit") || e.getName().equals("header")) {
+			if (e.getName().equals("trans-unit")) {
+				units++;
+			}
+			Element ref = new Element(REF);
+			ref.setAttribute("hash", write(e.toString(), packFile, indexWriter));
+			return ref;
+		}
+		Element copy = new Element(e.getName());
+		List<Attribute> atts = e.getAttributes();
+		for (int i = 0; i < atts.size(); i++) {
+			copy.setAttribute(atts.get(i).getName(), atts.get(i).getValue());
+		}
+		List<XMLNode> content = e.getContent();
+		for (int i = 0; i < content.size(); i++) {
+			XMLNode node = content.get(i);
+			if (node.getNodeType() == XMLNode.ELEMENT_NODE) {
+				copy.addContent(skeleton((Element) node, packFile, indexWriter));
+			} else {
+				copy.addContent(node);
+			}
+		}
+		return copy;
+	}
+
+	private String write(String text, RandomAccessFile packFile, Writer indexWriter) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		String hash = FileUtils.checksum(bytes);
+		if (entries.containsKey(hash)) {
+			return hash;
+		}
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			deflater.setInput(bytes);
+			deflater.finish();
+			byte[] buffer = new byte[8192];
+			while (!deflater.finished()) {
+				int count = deflater.deflate(buffer);
+				out.write(buffer, 0, count);
+			}
+		} finally {
+			deflater.end();
+		}
+		long offset = packFile.getFilePointer();
+		byte[] compressed = out.toByteArray();
+		packFile.write(compressed);
+		indexWriter.write(hash + " " + offset + " " + compressed.length + " " + bytes.length + "\n");
+		entries.put(hash, new long[] { offset, compressed.length, bytes.length });
+		return hash;
+	}
+
+	private String read(RandomAccessFile packFile, String hash) throws IOException {
+		long[] entry = entries.get(hash);
+		if (entry == null) {
+			throw new IOException(Messages.getString("BuildArchive.1"));
+		}
+		byte[] compressed = new byte[(int) entry[1]];
+		packFile.seek(entry[0]);
+		packFile.readFully(compressed);
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed);
+			byte[] bytes = new byte[(int) entry[2]];
+			int done = 0;
+			while (done < bytes.length && !inflater.finished()) {
+				int count = inflater.inflate(bytes, done, bytes.length - done);
+				if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				done += count;
+			}
+			if (done != bytes.length || !hash.equals(FileUtils.checksum(bytes))) {
+				// damaged pack or index
+				throw new IOException(Messages.getString("BuildArchive.1"));
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		} catch (DataFormatException e) {
+			throw new IOException(Messages.getString("BuildArchive.1"), e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private void loadIndex() throws IOException {
+		if (!index.exists()) {
+			return;
+		}
+		long packLength = pack.length();
+		long complete = completeLength();
+		long read = 0l;
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(index), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// lines are ASCII; a last line without a line end was not completely written
+				read += line.length() + 1;
+				if (read > complete) {
+					break;
+				}
+				String[] parts = line.split(" ");
+				if (parts.length != 4) {
+					continue;
+				}
+				long[] entry = new long[] { Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+						Long.parseLong(parts[3]) };
+				// ignore entries whose data did not reach the pack
+				if (entry[0] + entry[1] <= packLength) {
+					entries.put(parts[0], entry);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the length of the index up to its last line end.
+	 */
+	private long completeLength() throws IOException {
+		if (!index.exists()) {
+			return 0l;
+		}
+		try (RandomAccessFile indexFile = new RandomAccessFile(index, "r")) {
+			byte[] buffer = new byte[4096];
+			long end = indexFile.length();
+			while (end > 0) {
+				int count = (int) Math.min(buffer.length, end);
+				indexFile.seek(end - count);
+				indexFile.readFully(buffer, 0, count);
+				for (int i = count - 1; i >= 0; i--) {
+					if (buffer[i] == '\n') {
+						return end - count + i + 1;
+					}
+				}
+				end -= count;
+			}
+		}
+		return 0l;
+	}
+
+	private static void collectRefs(Element e, List<Element> refs) {
+		List<Element> children = e.getChildren();
+		for (int i = 0; i < children.size(); i++) {
+			Element child = children.get(i);
+			if (child.getName().equals(REF)) {
+				refs.add(child);
+			} else {
+				collectRefs(child, refs);
+			}
+		}
+	}
+}
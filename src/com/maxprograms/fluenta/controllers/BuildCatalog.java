@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+
+import org.json.JSONObject;
+
+import com.maxprograms.utils.FileUtils;
+import com.maxprograms.utils.Preferences;
+
+/**
+ * Lists the builds imported for each language of a project, stored in
+ * <code>projects/&lt;id&gt;/builds.json</code>. Each entry records the build
+ * number, the archived file relative to the project folder, its size and
+ * SHA-256 checksum, the number of segments and the import date.
+ * <p>
+ * Projects created before the catalog existed are catalogued from their
+ * folders the first time they are opened.
+ */
+public class BuildCatalog {
+
+	public static final String CATALOG = "builds.json";
+
+	private File projectFolder;
+	private File catalogFile;
+	private JSONObject languages;
+
+	public BuildCatalog(File projectFolder) throws IOException {
+		this.projectFolder = projectFolder;
+		catalogFile = new File(projectFolder, CATALOG);
+		synchronized (BuildCatalog.class) {
+			if (catalogFile.exists()) {
+				languages = FileUtils.readJSON(catalogFile).getJSONObject("languages");
+			} else {
+				languages = new JSONObject();
+				scan();
+				if (!languages.isEmpty()) {
+					save();
+				}
+			}
+		}
+	}
+
+	public static BuildCatalog getInstance(long projectId) throws IOException {
+		Preferences preferences = Preferences.getInstance();
+		return new BuildCatalog(new File(preferences.getProjectsFolder(), "" + projectId));
+	}
+
+	public void add(String language, int build, File file, int segments) throws IOException {
+		JSONObject entry = new JSONObject();
+		entry.put("build", build);
+		entry.put("path", projectFolder.toPath().relativize(file.toPath()).toString().replace('\\', '/'));
+		entry.put("size", file.length());
+		entry.put("segments", segments);
+		entry.put("checksum", FileUtils.checksum(file));
+		entry.put("date", new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date()));
+		synchronized (BuildCatalog.class) {
+			// another import may have updated the catalog
+			if (catalogFile.exists()) {
+				languages = FileUtils.readJSON(catalogFile).getJSONObject("languages");
+			}
+			put(language, entry);
+			save();
+		}
+	}
+
+	/**
+	 * Returns the entry of the last build imported for a language, or null if
+	 * there is none.
+	 */
+	public JSONObject getLast(String language) {
+		JSONObject json = languages.optJSONObject(language);
+		if (json == null) {
+			return null;
+		}
+		return json.getJSONObject("builds").optJSONObject("" + json.getInt("last"));
+	}
+
+	public JSONObject get(String language, int build) {
+		return get(languages, language, build);
+	}
+
+	private static JSONObject get(JSONObject languages, String language, int build) {
+		JSONObject json = languages.optJSONObject(language);
+		if (json == null) {
+			return null;
+		}
+		return json.getJSONObject("builds").optJSONObject("" + build);
+	}
+
+	/**
+	 * Returns all builds of a language sorted by build number.
+	 */
+	public List<JSONObject> getBuilds(String language) {
+		List<JSONObject> result = new Vector<>();
+		JSONObject json = languages.optJSONObject(language);
+		if (json != null) {
+			JSONObject builds = json.getJSONObject("builds");
+			Iterator<String> keys = builds.keys();
+			while (keys.hasNext()) {
+				result.add(builds.getJSONObject(keys.next()));
+			}
+			result.sort((a, b) -> Integer.compare(a.getInt("build"), b.getInt("build")));
+		}
+		return result;
+	}
+
+	public File getFile(JSONObject entry) {
+		return new File(projectFolder, entry.getString("path"));
+	}
+
+	private void put(String language, JSONObject entry) {
+		JSONObject json = languages.optJSONObject(language);
+		if (json == null) {
+			json = new JSONObject();
+			json.put("last", -1);
+			json.put("builds", new JSONObject());
+			languages.put(language, json);
+		}
+		int build = entry.getInt("build");
+		json.getJSONObject("builds").put("" + build, entry);
+		if (build > json.getInt("last")) {
+			json.put("last", build);
+		}
+	}
+
+	private void scan() throws IOException {
+		File[] folders = projectFolder.listFiles();
+		if (folders == null) {
+			return;
+		}
+		for (int i = 0; i < folders.length; i++) {
+			if (folders[i].isDirectory()) {
+				if (folders[i].getName().equals("archive")) {
+					File[] archived = folders[i].listFiles();
+					for (int j = 0; j < archived.length; j++) {
+						if (archived[j].isDirectory()) {
+							scan(archived[j], ".skl");
+						}
+					}
+				} else {
+					scan(folders[i], ".xlf");
+				}
+			}
+		}
+	}
+
+	private void scan(File languageFolder, String extension) throws IOException {
+		File[] files = languageFolder.listFiles((dir, name) -> name.startsWith("build_") && name.endsWith(extension));
+		for (int i = 0; i < files.length; i++) {
+			String name = files[i].getName();
+			int build;
+			try {
+				build = Integer.parseInt(name.substring("build_".length(), name.length() - extension.length()));
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			JSONObject existing = get(languages, languageFolder.getName(), build);
+			// an archived build replaces the XLIFF written by older versions
+			if (existing != null && extension.equals(".xlf")) {
+				continue;
+			}
+			JSONObject entry = new JSONObject();
+			entry.put("build", build);
+			entry.put("path", projectFolder.toPath().relativize(files[i].toPath()).toString().replace('\\', '/'));
+			entry.put("size", files[i].length());
+			entry.put("segments", -1);
+			entry.put("checksum", FileUtils.checksum(files[i]));
+			entry.put("date", new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date(files[i].lastModified())));
+			put(languageFolder.getName(), entry);
+		}
+	}
+
+	private void save() throws IOException {
+		JSONObject json = new JSONObject();
+		json.put("languages", languages);
+		File temp = new File(projectFolder, CATALOG + ".tmp");
+		try (FileOutputStream out = new FileOutputStream(temp)) {
+			out.write(json.toString(2).getBytes(StandardCharsets.UTF_8));
+		}
+		Files.move(temp.toPath(), catalogFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+}
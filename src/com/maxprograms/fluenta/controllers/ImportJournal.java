@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.json.JSONObject;
+
+import com.maxprograms.utils.FileUtils;
+
+/**
+ * Records the steps completed by the import of an XLIFF file in
+ * <code>projects/&lt;id&gt;/journal/&lt;lang&gt;.json</code>, so that an
+ * import interrupted by a failure can be run again without repeating them.
+ * The journal is kept until the import is recorded in the project history and
+ * applies only while the XLIFF file and build stay the same.
+ */
+public class ImportJournal {
+
+	public static final String MERGED = "merged";
+	public static final String PUBLISHED = "published";
+	public static final String TMX = "tmx";
+	public static final String MEMORY = "memory";
+	public static final String ARCHIVED = "archived";
+
+	private File projectFolder;
+	private File journalFile;
+	private JSONObject json;
+
+	public ImportJournal(File projectFolder, String language, String build, File xliff) throws IOException {
+		this.projectFolder = projectFolder;
+		journalFile = getFile(projectFolder, language);
+		String checksum = FileUtils.checksum(xliff);
+		if (journalFile.exists()) {
+			json = FileUtils.readJSON(journalFile);
+			if (!checksum.equals(json.optString("checksum")) || !build.equals(json.optString("build"))) {
+				// a different file or build starts over
+				discard(journalFile, json);
+				json = null;
+			}
+		}
+		if (json == null) {
+			json = new JSONObject();
+			json.put("xliff", xliff.getAbsolutePath());
+			json.put("checksum", checksum);
+			json.put("build", build);
+			json.put("steps", new JSONObject());
+		}
+	}
+
+	/**
+	 * Returns true if some steps of the import were completed by an earlier run.
+	 */
+	public boolean isResumed() {
+		return !json.getJSONObject("steps").isEmpty();
+	}
+
+	public String getCompletedSteps() {
+		return String.join(", ", json.getJSONObject("steps").keySet());
+	}
+
+	public boolean isDone(String step) {
+		return json.getJSONObject("steps").has(step);
+	}
+
+	public void done(String step) throws IOException {
+		json.getJSONObject("steps").put(step, new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date()));
+		save();
+	}
+
+	/**
+	 * Returns a new, empty staging folder for the merge, replacing the one left
+	 * by an interrupted run.
+	 */
+	public File newStaging() throws IOException {
+		deleteStaging();
+		File staging = Files.createTempDirectory(projectFolder.toPath(), "merge").toFile();
+		json.put("staging", staging.getAbsolutePath());
+		save();
+		return staging;
+	}
+
+	public File getStaging() {
+		return new File(json.getString("staging"));
+	}
+
+	public void deleteStaging() throws IOException {
+		if (json.has("staging")) {
+			FileUtils.deleteFolder(getStaging());
+			json.remove("staging");
+			save();
+		}
+	}
+
+	public void discard() throws IOException {
+		discard(journalFile, json);
+	}
+
+	private static void discard(File journalFile, JSONObject json) throws IOException {
+		if (json.has("staging")) {
+			FileUtils.deleteFolder(new File(json.getString("staging")));
+		}
+		Files.deleteIfExists(journalFile.toPath());
+	}
+
+	/**
+	 * Removes the journal of a language once its import is recorded.
+	 */
+	public static void clear(File projectFolder, String language) throws IOException {
+		Files.deleteIfExists(getFile(projectFolder, language).toPath());
+	}
+
+	private static File getFile(File projectFolder, String language) {
+		return new File(new File(projectFolder, "journal"), language + ".json");
+	}
+
+	private void save() throws IOException {
+		File parent = journalFile.getParentFile();
+		if (!parent.exists()) {
+			Files.createDirectories(parent.toPath());
+		}
+		File temp = new File(parent, journalFile.getName() + ".tmp");
+		try (FileOutputStream out = new FileOutputStream(temp)) {
+			out.write(json.toString(2).getBytes(StandardCharsets.UTF_8));
+		}
+		Files.move(temp.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+}
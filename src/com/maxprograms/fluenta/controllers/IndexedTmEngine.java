@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.xml.sax.SAXException;
+
+import com.maxprograms.languages.LanguageUtils;
+import com.maxprograms.swordfish.tm.ITmEngine;
+import com.maxprograms.swordfish.tm.Match;
+import com.maxprograms.utils.Preferences;
+import com.maxprograms.xml.CatalogBuilder;
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.SAXBuilder;
+
+/**
+ * Memory engine that answers fuzzy searches from a {@link TrigramIndex} and
+ * reads only the matching units from the wrapped engine. Units stored through
+ * this engine, one by one or from a TMX file, are added to the index in the
+ * same commit, and exports read the units listed in the index one by one.
+ * <p>
+ * The index of a memory created before it existed is built from an export of
+ * the memory the first time the memory is opened. Committed units are also
+ * listed for the next update of the memory's {@link TmSnapshot}.
+ */
+public class IndexedTmEngine implements ITmEngine, TmxUnitHandler.Store, StreamingTmxExporter.Source {
+
+	private ITmEngine engine;
+	private TrigramIndex index;
+	private File memoryFolder;
+	private Set<String> changed;
+
+	public IndexedTmEngine(ITmEngine engine, File memoryFolder)
+			throws IOException, SQLException, SAXException, ParserConfigurationException, URISyntaxException,
+			JSONException {
+		this.engine = engine;
+		this.memoryFolder = memoryFolder;
+		changed = new HashSet<>();
+		index = new TrigramIndex(new File(memoryFolder, "trigrams"));
+		if (!index.isReady()) {
+			buildIndex();
+		}
+	}
+
+	private void buildIndex() throws IOException, SQLException, SAXException, ParserConfigurationException,
+			URISyntaxException, JSONException {
+		Set<String> languages = engine.getAllLanguages();
+		if (!languages.isEmpty()) {
+			File tmx = File.createTempFile("index", ".tmx");
+			try {
+				engine.exportMemory(tmx.getAbsolutePath(), languages, "*all*");
+				parse(tmx, index);
+			} finally {
+				Files.deleteIfExists(tmx.toPath());
+			}
+		}
+		index.setReady();
+	}
+
+	private static int parse(File tmx, TmxUnitHandler.Store store)
+			throws IOException, SAXException, ParserConfigurationException, URISyntaxException, SQLException {
+		TmxUnitHandler handler = new TmxUnitHandler(store);
+		SAXBuilder builder = new SAXBuilder();
+		builder.setEntityResolver(CatalogBuilder.getCatalog(Preferences.getInstance().getCatalogFile()));
+		builder.setContentHandler(handler);
+		builder.build(tmx);
+		store.commit();
+		return handler.getCount();
+	}
+
+	@Override
+	public String getType() {
+		return engine.getType();
+	}
+
+	@Override
+	public String getName() {
+		return engine.getName();
+	}
+
+	@Override
+	public void close() throws IOException, SQLException, URISyntaxException {
+		index.close();
+		engine.close();
+		TmSnapshot.recordChanges(memoryFolder, changed);
+		changed.clear();
+	}
+
+	@Override
+	public int storeTMX(String tmxFile, String project, String customer, String subject)
+			throws SAXException, IOException, ParserConfigurationException, SQLException, URISyntaxException {
+		// Fluenta does not tag imported units with project, customer or subject
+		return parse(new File(tmxFile), this);
+	}
+
+	@Override
+	public void exportMemory(String tmxFile, Set<String> langs, String srcLang) throws IOException, SAXException,
+			ParserConfigurationException, SQLException, JSONException, URISyntaxException {
+		engine.exportMemory(tmxFile, langs, srcLang);
+	}
+
+	@Override
+	public void readUnits(Set<String> languages, TmxUnitHandler.Store store)
+			throws IOException, SQLException, URISyntaxException {
+		Iterator<String> it = index.getUnits(languages);
+		while (it.hasNext()) {
+			Element tu;
+			try {
+				tu = engine.getTu(it.next());
+			} catch (SAXException | ParserConfigurationException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+			if (tu != null) {
+				store.storeTu(tu);
+			}
+		}
+	}
+
+	@Override
+	public Set<String> getAllClients() throws SQLException, IOException, URISyntaxException {
+		return engine.getAllClients();
+	}
+
+	@Override
+	public Set<String> getAllLanguages() throws SQLException, IOException, URISyntaxException {
+		return engine.getAllLanguages();
+	}
+
+	@Override
+	public Set<String> getAllProjects() throws SQLException, IOException, URISyntaxException {
+		return engine.getAllProjects();
+	}
+
+	@Override
+	public Set<String> getAllSubjects() throws SQLException, IOException, URISyntaxException {
+		return engine.getAllSubjects();
+	}
+
+	@Override
+	public List<Match> searchTranslation(String searchStr, String srcLang, String tgtLang, int similarity,
+			boolean caseSensitive)
+			throws IOException, SAXException, ParserConfigurationException, SQLException, URISyntaxException {
+		List<Match> result = new Vector<>();
+		Map<String, Integer> candidates = index.search(searchStr, srcLang, similarity, caseSensitive);
+		if (candidates.isEmpty()) {
+			return result;
+		}
+		String source = LanguageUtils.normalizeCode(srcLang);
+		String target = LanguageUtils.normalizeCode(tgtLang);
+		Iterator<Map.Entry<String, Integer>> it = candidates.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Integer> entry = it.next();
+			Element tu = engine.getTu(entry.getKey());
+			if (tu == null) {
+				continue;
+			}
+			Element srcTuv = null;
+			Element tgtTuv = null;
+			List<Element> tuvs = tu.getChildren("tuv");
+			for (int i = 0; i < tuvs.size(); i++) {
+				Element tuv = tuvs.get(i);
+				String lang = LanguageUtils.normalizeCode(tuv.getAttributeValue("xml:lang"));
+				if (source.equals(lang)) {
+					srcTuv = tuv;
+				} else if (target.equals(lang)) {
+					tgtTuv = tuv;
+				}
+			}
+			if (srcTuv == null || tgtTuv == null) {
+				continue;
+			}
+			Map<String, String> properties = new Hashtable<>();
+			List<Element> props = tu.getChildren("prop");
+			for (int i = 0; i < props.size(); i++) {
+				Element prop = props.get(i);
+				properties.put(prop.getAttributeValue("type"), prop.getText());
+			}
+			result.add(new Match(srcTuv, tgtTuv, entry.getValue(), engine.getName(), properties));
+		}
+		return result;
+	}
+
+	@Override
+	public List<Element> searchAll(String searchStr, String srcLang, int similarity, boolean caseSensitive)
+			throws IOException, SAXException, ParserConfigurationException, SQLException, URISyntaxException {
+		return engine.searchAll(searchStr, srcLang, similarity, caseSensitive);
+	}
+
+	@Override
+	public List<Element> concordanceSearch(String searchStr, String srcLang, int limit, boolean isRegexp,
+			boolean caseSensitive)
+			throws IOException, SAXException, ParserConfigurationException, SQLException, URISyntaxException {
+		return engine.concordanceSearch(searchStr, srcLang, limit, isRegexp, caseSensitive);
+	}
+
+	@Override
+	public void storeTu(Element tu) throws IOException, SQLException, URISyntaxException {
+		// the engine assigns an id to units that have none
+		engine.storeTu(tu);
+		index.storeTu(tu);
+		changed.add(tu.getAttributeValue("tuid"));
+	}
+
+	@Override
+	public void commit() throws SQLException, IOException, URISyntaxException {
+		// a crash before the index is committed rebuilds it on the next open
+		index.clearReady();
+		engine.commit();
+		index.setReady();
+		TmSnapshot.recordChanges(memoryFolder, changed);
+		changed.clear();
+	}
+
+	@Override
+	public Element getTu(String tuid)
+			throws IOException, SAXException, ParserConfigurationException, SQLException, URISyntaxException {
+		return engine.getTu(tuid);
+	}
+
+	@Override
+	public void removeTu(String tuid)
+			throws IOException, SAXException, ParserConfigurationException, SQLException, URISyntaxException {
+		index.clearReady();
+		engine.removeTu(tuid);
+		index.remove(tuid);
+		index.setReady();
+		TmSnapshot.recordChanges(memoryFolder, Set.of(tuid));
+	}
+
+	@Override
+	public void deleteDatabase() throws IOException, SQLException, URISyntaxException {
+		index.delete();
+		engine.deleteDatabase();
+	}
+
+	@Override
+	public JSONArray batchTranslate(JSONObject params)
+			throws IOException, SAXException, ParserConfigurationException, SQLException, URISyntaxException {
+		return engine.batchTranslate(params);
+	}
+}
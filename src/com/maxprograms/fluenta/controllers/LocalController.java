@@ -30,10 +30,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.xml.parsers.ParserConfigurationException;
 
+import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 import org.xml.sax.SAXException;
 
 import com.maxprograms.converters.Constants;
@@ -42,7 +46,6 @@ import com.maxprograms.converters.EncodingResolver;
 import com.maxprograms.converters.FileFormats;
 import com.maxprograms.converters.ILogger;
 import com.maxprograms.converters.Merge;
-import com.maxprograms.converters.TmxExporter;
 import com.maxprograms.converters.Utils;
 import com.maxprograms.converters.ditamap.DitaMap2Xliff;
 import com.maxprograms.converters.ditamap.Xliff2DitaMap;
@@ -56,8 +59,10 @@ import com.maxprograms.swordfish.tm.ITmEngine;
 import com.maxprograms.swordfish.tm.Match;
 import com.maxprograms.swordfish.tm.MatchQuality;
 import com.maxprograms.swordfish.tm.SqliteDatabase;
+import com.maxprograms.swordfish.tm.TMUtils;
+import com.maxprograms.utils.FileUtils;
 import com.maxprograms.utils.Preferences;
-import com.maxprograms.xliff2.FromXliff2;
+import com.maxprograms.utils.SimpleLogger;
 import com.maxprograms.xliff2.ToXliff2;
 import com.maxprograms.xml.Attribute;
 import com.maxprograms.xml.CatalogBuilder;
@@ -70,14 +75,20 @@ import com.maxprograms.xml.XMLOutputter;
 
 public class LocalController {
 
+	// OpenXLIFF converters and TmxExporter keep their state in static fields
+	private static final Object CONVERTERS = new Object();
+
 	private Map<String, String> validCtypes;
 	private Map<String, String> phCtypes;
 
 	private ProjectsManager projectsManager;
 	private MemoriesManager memoriesManager;
 	private static double penalty = 1;
+	private boolean incrementalMerge;
+	private int maxTagErrors = -1;
 
 	public LocalController() throws IOException {
+		initCtypes();
 		// check catalog
 		Preferences preferences = Preferences.getInstance();
 		File catalog = new File(preferences.getCatalogFile());
@@ -155,8 +166,67 @@ public class LocalController {
 	}
 
 	public ITmEngine getTMEngine(long memoryId) throws IOException, SQLException {
-		Preferences preferences = Preferences.getInstance();
-		return new SqliteDatabase("" + memoryId, preferences.getMemoriesFolder().getAbsolutePath());
+		try {
+			TmUpdateQueue.getInstance().flush(memoryId);
+			return openTMEngine(memoryId);
+		} catch (SAXException | ParserConfigurationException | URISyntaxException | JSONException
+				| ParseException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns a read-only snapshot of a memory for match lookups, with a
+	 * {@link MatchCache} of its results.
+	 */
+	public ITmEngine getTMSnapshot(long memoryId) throws IOException, SQLException {
+		try {
+			TmUpdateQueue.getInstance().flush(memoryId);
+			Memory memory = getMemory(memoryId);
+			TmSnapshot snapshot = TmSnapshot.open(memoryId);
+			return new MatchCache(snapshot, memoryId, memory.getLastUpdate().getTime() + "/" + snapshot.getVersion());
+		} catch (SAXException | ParserConfigurationException | URISyntaxException | JSONException
+				| ParseException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	static ITmEngine openTMEngine(long memoryId) throws IOException, SQLException, SAXException,
+			ParserConfigurationException, URISyntaxException, JSONException {
+		File memoriesFolder = Preferences.getInstance().getMemoriesFolder();
+		File memoryFolder = new File(memoriesFolder, "" + memoryId);
+		if (Memory.MAPDB.equals(getEngine(memoryId))) {
+			return new MapDbEngine("" + memoryId, memoryFolder);
+		}
+		return new IndexedTmEngine(new SqliteDatabase("" + memoryId, memoriesFolder.getAbsolutePath()),
+				memoryFolder);
+	}
+
+	/**
+	 * Returns the engine of the database found in the memory folder, or the
+	 * engine recorded in memories.json for a memory without a database yet. The
+	 * folder wins because {@link #rebuildMemory} replaces it before the new
+	 * engine is recorded. A replacement interrupted by a crash is completed or
+	 * undone first.
+	 */
+	static String getEngine(long memoryId) throws IOException {
+		File memoriesFolder = Preferences.getInstance().getMemoriesFolder();
+		File memoryFolder = new File(memoriesFolder, "" + memoryId);
+		File backup = new File(memoriesFolder, memoryId + ".replaced");
+		if (backup.exists()) {
+			if (memoryFolder.exists()) {
+				FileUtils.deleteFolder(backup);
+			} else {
+				Files.move(backup.toPath(), memoryFolder.toPath());
+			}
+		}
+		if (new File(memoryFolder, "mapdb").exists()) {
+			return Memory.MAPDB;
+		}
+		if (new File(memoryFolder, "db.db").exists()) {
+			return Memory.SQLITE;
+		}
+		return new MemoriesManager(memoriesFolder).getEngine(memoryId);
 	}
 
 	public void generateXliff(Project project, String xliffFolder, List<Language> tgtLangs, boolean useICE,
@@ -165,6 +235,17 @@ public class LocalController {
 			ILogger logger)
 			throws IOException, SAXException, ParserConfigurationException, URISyntaxException, SQLException,
 			JSONException, ParseException {
+		generateXliff(project, xliffFolder, tgtLangs, useICE, useTM, generateCount, ditavalFile, version,
+				embedSkeleton, modifiedFilesOnly, false, ignoreTrackedChanges, ignoreSVG, paragraphSegmentation,
+				logger);
+	}
+
+	public void generateXliff(Project project, String xliffFolder, List<Language> tgtLangs, boolean useICE,
+			boolean useTM, boolean generateCount, String ditavalFile, String version, boolean embedSkeleton,
+			boolean modifiedFilesOnly, boolean modifiedSegmentsOnly, boolean ignoreTrackedChanges, boolean ignoreSVG,
+			boolean paragraphSegmentation, ILogger logger)
+			throws IOException, SAXException, ParserConfigurationException, URISyntaxException, SQLException,
+			JSONException, ParseException {
 		Map<String, String> params = new Hashtable<>();
 		params.put("source", project.getMap());
 		File map = new File(project.getMap());
@@ -211,112 +292,80 @@ public class LocalController {
 		}
 		logger.setStage(Messages.getString("LocalController.1"));
 		MessageFormat mf = new MessageFormat(Messages.getString("LocalController.2"));
-		for (int i = 0; i < tgtLangs.size(); i++) {
-			logger.log(
-					mf.format(new String[] {
-							LanguageUtils.getLanguage(tgtLangs.get(i).getCode()).getDescription() }));
-			String newName = getName(map.getName(), tgtLangs.get(i).getCode());
-			File newFile = new File(folder, newName);
-			Files.copy(xliffFile.toPath(), newFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-			changeTargetLanguage(newFile, tgtLangs.get(i).getCode(), project);
-			int build = project.getNextBuild(tgtLangs.get(i).getCode());
-			project.getHistory()
-					.add(new ProjectEvent(ProjectEvent.XLIFF_CREATED, new Date(), tgtLangs.get(i).getCode(),
-							build));
-			project.setLanguageStatus(tgtLangs.get(i).getCode(), Project.IN_PROGRESS);
-			updateProject(project);
-		}
-		Files.deleteIfExists(xliffFile.toPath());
-		if (useICE) {
-			MessageFormat icem = new MessageFormat(Messages.getString("LocalController.3"));
+		try {
 			for (int i = 0; i < tgtLangs.size(); i++) {
-				logger.setStage(icem.format(
-						new String[] { LanguageUtils.getLanguage(tgtLangs.get(i).getCode()).getDescription() }));
-				logger.log(Messages.getString("LocalController.4"));
-				String newName = getName(map.getName(), tgtLangs.get(i).getCode());
-				File xliff = new File(folder, newName);
-				File previousBuild = getPreviousBuild(project, tgtLangs.get(i).getCode());
-				if (previousBuild != null) {
-					leverage(xliff, previousBuild, logger);
-				}
-				if (modifiedFilesOnly) {
-					removeUnchanged(xliff);
+				if (logger.isCancelled()) {
+					throw new IOException(Messages.getString("LocalController.12"));
 				}
+				logger.log(
+						mf.format(new String[] {
+								LanguageUtils.getLanguage(tgtLangs.get(i).getCode()).getDescription() }));
+				String newName = getName(map.getName(), tgtLangs.get(i).getCode());
+				File newFile = new File(folder, newName);
+				Files.copy(xliffFile.toPath(), newFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				changeTargetLanguage(newFile, tgtLangs.get(i).getCode(), project);
+				int build = project.getNextBuild(tgtLangs.get(i).getCode());
+				project.getHistory()
+						.add(new ProjectEvent(ProjectEvent.XLIFF_CREATED, new Date(), tgtLangs.get(i).getCode(),
+								build));
+				project.setLanguageStatus(tgtLangs.get(i).getCode(), Project.IN_PROGRESS);
+				updateProject(project);
 			}
+		} finally {
+			Files.deleteIfExists(xliffFile.toPath());
 		}
-		if (useTM) {
-			MessageFormat mftm = new MessageFormat(Messages.getString("LocalController.5"));
+		ResourceGovernor governor = ResourceGovernor.getInstance();
+		if (useICE || modifiedSegmentsOnly) {
+			MessageFormat icem = new MessageFormat(Messages.getString("LocalController.3"));
+			BuildArchive archive = BuildArchive.getInstance(project.getId());
+			BuildCatalog catalog = BuildCatalog.getInstance(project.getId());
+			List<Callable<Void>> tasks = new Vector<>();
+			List<Long> estimates = new Vector<>();
 			for (int i = 0; i < tgtLangs.size(); i++) {
-				logger.setStage(mftm.format(
-						new String[] { LanguageUtils.getLanguage(tgtLangs.get(i).getCode()).getDescription() }));
-				logger.log(Messages.getString("LocalController.6"));
-				String targetName = getName(map.getName(), tgtLangs.get(i).getCode());
-				File targetXliff = new File(folder, targetName);
-				SAXBuilder builder = new SAXBuilder();
-				builder.setEntityResolver(CatalogBuilder.getCatalog(Preferences.getInstance().getCatalogFile()));
-				Document doc1 = builder.build(targetXliff);
-				Element root1 = doc1.getRootElement();
-				Element firstFile = root1.getChild("file");
-				if (firstFile == null) {
-					logger.displayError(Messages.getString("LocalController.7"));
-					return;
-				}
-				String sourceLang = firstFile.getAttributeValue("source-language");
-				String targetLang = firstFile.getAttributeValue("target-language");
-				List<Element> segments = new Vector<>();
-				recurse(root1, segments);
-				List<Long> mems = project.getMemories();
-				List<ITmEngine> dbs = new Vector<>();
-				for (int i2 = 0; i2 < mems.size(); i2++) {
-					dbs.add(getTMEngine(mems.get(i2)));
-				}
-				MessageFormat mf2 = new MessageFormat(Messages.getString("LocalController.8"));
-				Iterator<Element> it = segments.iterator();
-				int count = 0;
-				while (it.hasNext()) {
-					if (count % 200 == 0) {
-						logger.log(mf2.format(new String[] { "" + count, "" + segments.size() }));
-					}
-					Element seg = it.next();
-					if (seg.getAttributeValue("approved", "no").equalsIgnoreCase("yes")) {
-						continue;
-					}
-					List<Element> matches = new Vector<>();
-					List<Element> res = null;
-					for (int i2 = 0; i2 < dbs.size(); i2++) {
-						res = searchText(dbs.get(i2), seg, sourceLang, targetLang, 70f, true);
-						if (res != null && !res.isEmpty()) {
-							matches.addAll(res);
+				String code = tgtLangs.get(i).getCode();
+				File xliff = new File(folder, getName(map.getName(), code));
+				JSONObject previousBuild = catalog.getLast(code);
+				// archived units take about as much memory as the new XLIFF
+				estimates.add(governor.estimate(xliff) * (previousBuild != null ? 2 : 1));
+				tasks.add(() -> {
+					logger.setStage(icem.format(new String[] { LanguageUtils.getLanguage(code).getDescription() }));
+					logger.log(Messages.getString("LocalController.4"));
+					if (previousBuild != null) {
+						leverage(xliff, getPreviousUnits(archive, catalog, previousBuild, code), logger);
+						if (modifiedSegmentsOnly) {
+							removeUnchangedSegments(project, xliff, code);
 						}
 					}
-					matches = sortMatches(matches);
-					int max = matches.size();
-					if (max > 10) {
-						max = 10;
+					if (modifiedFilesOnly) {
+						removeUnchanged(xliff);
 					}
-					for (int i2 = 0; i2 < max; i2++) {
-						Element match = matches.get(i2);
-						try {
-							if (Float.parseFloat(match.getAttributeValue("match-quality")) >= 70) {
-								seg.addContent(match);
-								seg.addContent("\n");
-							}
-						} catch (NumberFormatException e) {
-							// do nothing
-						}
+					return null;
+				});
+			}
+			governor.run(tasks, estimates, logger);
+		}
+		if (useTM) {
+			MessageFormat mftm = new MessageFormat(Messages.getString("LocalController.5"));
+			AtomicBoolean emptyXliff = new AtomicBoolean(false);
+			List<Callable<Void>> tasks = new Vector<>();
+			List<Long> estimates = new Vector<>();
+			for (int i = 0; i < tgtLangs.size(); i++) {
+				String code = tgtLangs.get(i).getCode();
+				File targetXliff = new File(folder, getName(map.getName(), code));
+				estimates.add(governor.estimate(targetXliff));
+				tasks.add(() -> {
+					logger.setStage(mftm.format(new String[] { LanguageUtils.getLanguage(code).getDescription() }));
+					logger.log(Messages.getString("LocalController.6"));
+					if (!applyTM(project, targetXliff, logger)) {
+						emptyXliff.set(true);
 					}
-					count++;
-				}
-				logger.log(mf2.format(new String[] { "" + segments.size(), "" + segments.size() }));
-				for (int i2 = 0; i2 < dbs.size(); i2++) {
-					ITmEngine db = dbs.get(i2);
-					db.close();
-				}
-				try (FileOutputStream out = new FileOutputStream(targetXliff)) {
-					XMLOutputter outputter = new XMLOutputter();
-					outputter.preserveSpace(true);
-					outputter.output(doc1, out);
-				}
+					return null;
+				});
+			}
+			governor.run(tasks, estimates, logger);
+			if (emptyXliff.get()) {
+				logger.displayError(Messages.getString("LocalController.7"));
+				return;
 			}
 		}
 		if (generateCount) {
@@ -350,6 +399,97 @@ public class LocalController {
 		}
 	}
 
+	private boolean applyTM(Project project, File targetXliff, ILogger logger)
+			throws SAXException, IOException, ParserConfigurationException, URISyntaxException, SQLException {
+		SAXBuilder builder = new SAXBuilder();
+		builder.setEntityResolver(CatalogBuilder.getCatalog(Preferences.getInstance().getCatalogFile()));
+		Document doc1 = builder.build(targetXliff);
+		Element root1 = doc1.getRootElement();
+		Element firstFile = root1.getChild("file");
+		if (firstFile == null) {
+			return false;
+		}
+		String sourceLang = firstFile.getAttributeValue("source-language");
+		String targetLang = firstFile.getAttributeValue("target-language");
+		List<Element> segments = new Vector<>();
+		recurse(root1, segments);
+		List<Long> mems = project.getMemories();
+		List<ITmEngine> dbs = new Vector<>();
+		try {
+			for (int i2 = 0; i2 < mems.size(); i2++) {
+				dbs.add(getTMSnapshot(mems.get(i2)));
+			}
+			lookupMatches(dbs, segments, sourceLang, targetLang, logger);
+			int hits = 0;
+			int lookups = 0;
+			for (int i2 = 0; i2 < dbs.size(); i2++) {
+				if (dbs.get(i2) instanceof MatchCache cache) {
+					hits += cache.getHits();
+					lookups += cache.getHits() + cache.getMisses();
+				}
+			}
+			MessageFormat mf = new MessageFormat(Messages.getString("LocalController.49"));
+			logger.log(mf.format(new String[] { "" + hits, "" + lookups }));
+		} finally {
+			for (int i2 = 0; i2 < dbs.size(); i2++) {
+				ITmEngine db = dbs.get(i2);
+				db.close();
+			}
+		}
+		try (FileOutputStream out = new FileOutputStream(targetXliff)) {
+			XMLOutputter outputter = new XMLOutputter();
+			outputter.preserveSpace(true);
+			outputter.output(doc1, out);
+		}
+		return true;
+	}
+
+	private void lookupMatches(List<ITmEngine> dbs, List<Element> segments, String sourceLang, String targetLang,
+			ILogger logger)
+			throws SAXException, IOException, ParserConfigurationException, URISyntaxException, SQLException {
+		MessageFormat mf2 = new MessageFormat(Messages.getString("LocalController.8"));
+		Iterator<Element> it = segments.iterator();
+		int count = 0;
+		while (it.hasNext()) {
+			if (logger.isCancelled()) {
+				throw new IOException(Messages.getString("LocalController.12"));
+			}
+			if (count % 200 == 0) {
+				logger.log(mf2.format(new String[] { "" + count, "" + segments.size() }));
+			}
+			Element seg = it.next();
+			if (seg.getAttributeValue("approved", "no").equalsIgnoreCase("yes")) {
+				continue;
+			}
+			List<Element> matches = new Vector<>();
+			List<Element> res = null;
+			for (int i2 = 0; i2 < dbs.size(); i2++) {
+				res = searchText(dbs.get(i2), seg, sourceLang, targetLang, 70f, true);
+				if (res != null && !res.isEmpty()) {
+					matches.addAll(res);
+				}
+			}
+			matches = sortMatches(matches);
+			int max = matches.size();
+			if (max > 10) {
+				max = 10;
+			}
+			for (int i2 = 0; i2 < max; i2++) {
+				Element match = matches.get(i2);
+				try {
+					if (Float.parseFloat(match.getAttributeValue("match-quality")) >= 70) {
+						seg.addContent(match);
+						seg.addContent("\n");
+					}
+				} catch (NumberFormatException e) {
+					// do nothing
+				}
+			}
+			count++;
+		}
+		logger.log(mf2.format(new String[] { "" + segments.size(), "" + segments.size() }));
+	}
+
 	private void removeUnchanged(File xliff) throws SAXException, IOException, ParserConfigurationException {
 		SAXBuilder builder = new SAXBuilder();
 		Document doc = builder.build(xliff);
@@ -372,6 +512,101 @@ public class LocalController {
 		}
 	}
 
+	private void removeUnchangedSegments(Project project, File xliff, String code)
+			throws SAXException, IOException, ParserConfigurationException {
+		SAXBuilder builder = new SAXBuilder();
+		Document doc = builder.build(xliff);
+		Element root = doc.getRootElement();
+		List<Element> files = root.getChildren("file");
+		if (files.isEmpty()) {
+			return;
+		}
+		// keep the complete document; import restores the removed segments from it
+		File base = getDeltaBase(project, code, files.get(0).getAttributeValue("build-num"));
+		Files.createDirectories(base.getParentFile().toPath());
+		Files.copy(xliff.toPath(), base.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		boolean removed = false;
+		for (int i = 0; i < files.size(); i++) {
+			Element file = files.get(i);
+			if (removeApproved(file)) {
+				removed = true;
+			}
+			List<Element> remaining = new Vector<>();
+			recurseSegments(file, remaining);
+			if (remaining.isEmpty() && root.getChildren("file").size() > 1) {
+				root.removeChild(file);
+			}
+		}
+		if (!removed) {
+			Files.delete(base.toPath());
+			return;
+		}
+		try (FileOutputStream out = new FileOutputStream(xliff)) {
+			XMLOutputter outputter = new XMLOutputter();
+			outputter.preserveSpace(true);
+			outputter.output(doc, out);
+		}
+	}
+
+	private static boolean removeApproved(Element e) {
+		boolean removed = false;
+		List<Element> children = e.getChildren();
+		for (int i = 0; i < children.size(); i++) {
+			Element child = children.get(i);
+			if (child.getName().equals("trans-unit")) {
+				if (child.getAttributeValue("approved", "no").equals("yes")) {
+					e.removeChild(child);
+					removed = true;
+				}
+			} else if (removeApproved(child)) {
+				removed = true;
+			}
+		}
+		return removed;
+	}
+
+	private Document restoreDelta(Document delta, File base)
+			throws SAXException, IOException, ParserConfigurationException, URISyntaxException {
+		SAXBuilder builder = new SAXBuilder();
+		builder.setEntityResolver(CatalogBuilder.getCatalog(Preferences.getInstance().getCatalogFile()));
+		Document doc = builder.build(base);
+		Map<String, Element> deltaFiles = new Hashtable<>();
+		List<Element> files = delta.getRootElement().getChildren("file");
+		for (int i = 0; i < files.size(); i++) {
+			deltaFiles.put(files.get(i).getAttributeValue("original"), files.get(i));
+		}
+		List<Element> baseFiles = doc.getRootElement().getChildren("file");
+		for (int i = 0; i < baseFiles.size(); i++) {
+			Element baseFile = baseFiles.get(i);
+			Element deltaFile = deltaFiles.get(baseFile.getAttributeValue("original"));
+			if (deltaFile == null) {
+				continue;
+			}
+			List<Element> units = new Vector<>();
+			recurseSegments(deltaFile, units);
+			Map<String, Element> translated = new Hashtable<>();
+			for (int j = 0; j < units.size(); j++) {
+				translated.put(units.get(j).getAttributeValue("id"), units.get(j));
+			}
+			units.clear();
+			recurseSegments(baseFile, units);
+			for (int j = 0; j < units.size(); j++) {
+				Element unit = translated.get(units.get(j).getAttributeValue("id"));
+				if (unit != null) {
+					units.get(j).clone(unit);
+				}
+			}
+		}
+		return doc;
+	}
+
+	private static File getDeltaBase(Project project, String code, String build) throws IOException {
+		Preferences preferences = Preferences.getInstance();
+		File projectFolder = new File(preferences.getProjectsFolder(), "" + project.getId());
+		File deltaFolder = new File(new File(projectFolder, "delta"), code);
+		return new File(deltaFolder, "build_" + build + ".xlf");
+	}
+
 	private boolean hasUnapproved(Element file) {
 		List<Element> units = file.getChild("body").getChildren("trans-unit");
 		Iterator<Element> it = units.iterator();
@@ -383,20 +618,16 @@ public class LocalController {
 		return false;
 	}
 
-	private void leverage(File xliff, File previousBuild, ILogger logger)
+	private void leverage(File xliff, Map<String, List<Element>> previousUnits, ILogger logger)
 			throws IOException, SAXException, ParserConfigurationException {
 
 		SAXBuilder builder = new SAXBuilder();
 		Document doc = builder.build(xliff);
 		Element root = doc.getRootElement();
 		List<Element> segments = new Vector<>();
-
-		Document doc2 = builder.build(previousBuild);
-		Element root2 = doc2.getRootElement();
-		List<Element> leveraged = new Vector<>();
+		List<Element> leveraged = null;
 
 		List<Element> originalFiles = root.getChildren("file");
-		List<Element> oldFiles = root2.getChildren("file");
 
 		for (int fi = 0; fi < originalFiles.size(); fi++) {
 			Element currentFile = originalFiles.get(fi);
@@ -406,27 +637,21 @@ public class LocalController {
 					throw new IOException(Messages.getString("LocalController.12"));
 				}
 			}
-			Element oldFile = null;
-			for (int j = 0; j < oldFiles.size(); j++) {
-				if (oldFiles.get(j).getAttributeValue("original").equals(currentFile.getAttributeValue("original"))) {
-					oldFile = oldFiles.get(j);
-					break;
-				}
-			}
-			if (oldFile == null) {
+			leveraged = previousUnits.get(currentFile.getAttributeValue("original"));
+			if (leveraged == null) {
 				continue;
 			}
 			segments.clear();
 			recurseSegments(currentFile, segments);
 
-			leveraged.clear();
-			recurseSegments(oldFile, leveraged);
-
 			Element previous = null;
 			Element current = null;
 			Element next = null;
 			int size = segments.size();
 			for (int i = 0; i < size; i++) {
+				if (logger != null && logger.isCancelled()) {
+					throw new IOException(Messages.getString("LocalController.12"));
+				}
 				if (i > 0) {
 					previous = segments.get(i - 1).getChild("source");
 				}
@@ -523,28 +748,26 @@ public class LocalController {
 		}
 	}
 
-	private static File getPreviousBuild(Project project, String code) throws IOException {
-		Preferences preferences = Preferences.getInstance();
-		File projectFolder = new File(preferences.getProjectsFolder(), "" + project.getId());
-		File languageFolder = new File(projectFolder, code);
-		if (!languageFolder.exists()) {
-			return null;
+	/**
+	 * Returns the trans-units of a catalogued build grouped by file. Builds
+	 * imported before the segment store existed are read from their XLIFF file.
+	 */
+	private Map<String, List<Element>> getPreviousUnits(BuildArchive archive, BuildCatalog catalog, JSONObject build,
+			String code) throws IOException, SAXException, ParserConfigurationException {
+		File file = catalog.getFile(build);
+		if (!file.getName().endsWith(".xlf")) {
+			return archive.getUnits(code, build.getInt("build"));
 		}
-		File[] files = languageFolder.listFiles();
-		if (files.length == 0) {
-			return null;
-		}
-		int lastBuild = -1;
-		File bestMatch = files[0];
-		for (int i = 0; i < files.length; i++) {
-			File f = files[i];
-			int build = Integer.parseInt(f.getName().substring("build_".length(), f.getName().indexOf('.')));
-			if (build > lastBuild) {
-				lastBuild = build;
-				bestMatch = f;
-			}
+		SAXBuilder builder = new SAXBuilder();
+		Element root = builder.build(file).getRootElement();
+		Map<String, List<Element>> result = new Hashtable<>();
+		List<Element> files = root.getChildren("file");
+		for (int i = 0; i < files.size(); i++) {
+			List<Element> units = new Vector<>();
+			recurseSegments(files.get(i), units);
+			result.put(files.get(i).getAttributeValue("original"), units);
 		}
-		return bestMatch;
+		return result;
 	}
 
 	private static String getName(String name, String code) {
@@ -588,138 +811,354 @@ public class LocalController {
 		}
 	}
 
+	/**
+	 * When set, imports merge into a staging folder and only replace the files of
+	 * the target folder whose content changed since the previous import.
+	 */
+	public void setIncrementalMerge(boolean incrementalMerge) {
+		this.incrementalMerge = incrementalMerge;
+	}
+
+	/**
+	 * Sets the number of rows after which the tag errors report of an import
+	 * stops, or 0 to report all errors, instead of the
+	 * <code>tagErrors/maxErrors</code> preference.
+	 */
+	public void setMaxTagErrors(int maxTagErrors) {
+		this.maxTagErrors = maxTagErrors;
+	}
+
 	public void importXliff(Project project, String xliffDocument, String targetFolder, boolean updateTM,
 			boolean acceptUnapproved, boolean ignoreTagErrors, ILogger logger)
 			throws NumberFormatException, IOException, SAXException, ParserConfigurationException,
 			SQLException, URISyntaxException, JSONException, ParseException {
+		importXliff(project, xliffDocument, targetFolder, updateTM, acceptUnapproved, ignoreTagErrors, false,
+				logger);
+	}
+
+	/**
+	 * Imports a translated XLIFF file.
+	 * 
+	 * @return the tag errors that stopped the import, one JSON object per error
+	 *         with segment number, trans-unit id, file original and kind; empty
+	 *         when no tag errors were found or they were ignored
+	 */
+	public JSONArray importXliff(Project project, String xliffDocument, String targetFolder, boolean updateTM,
+			boolean acceptUnapproved, boolean ignoreTagErrors, boolean exportTmx, ILogger logger)
+			throws NumberFormatException, IOException, SAXException, ParserConfigurationException,
+			SQLException, URISyntaxException, JSONException, ParseException {
+		List<ProjectEvent> imported = new Vector<>();
+		JSONArray tagErrors = importFile(project, xliffDocument, targetFolder, updateTM, acceptUnapproved,
+				ignoreTagErrors, exportTmx, imported, logger);
+		if (!imported.isEmpty()) {
+			recordImports(project, imported);
+			logger.displaySuccess(Messages.getString("LocalController.24"));
+		}
+		return tagErrors;
+	}
+
+	/**
+	 * Imports several translated XLIFF files of a project concurrently. Parsing,
+	 * validation and archiving run in parallel; conversion, merge and memory
+	 * updates take turns because the converters keep static state. The project
+	 * history and language status are saved once, after all files are processed.
+	 * A batch with more than one file for the same target language is rejected
+	 * before any file is imported.
+	 * 
+	 * @return the tag errors of all files, each with an added
+	 *         <code>xliffFile</code> member
+	 */
+	public JSONArray importXliffs(Project project, List<String> xliffDocuments, List<String> targetFolders,
+			boolean updateTM, boolean acceptUnapproved, boolean ignoreTagErrors, boolean exportTmx, ILogger logger)
+			throws IOException, SQLException, JSONException, ParseException {
+		if (xliffDocuments.size() != targetFolders.size()) {
+			throw new IOException(Messages.getString("LocalController.42"));
+		}
+		// files of one language would share its import journal, delta base and merge
+		// manifest
+		List<String> languages = new Vector<>();
+		for (int i = 0; i < xliffDocuments.size(); i++) {
+			String language = XliffProbe.probe(new File(xliffDocuments.get(i))).getTargetLanguage();
+			if (language == null || language.isEmpty()) {
+				continue;
+			}
+			if (languages.contains(language.toLowerCase())) {
+				MessageFormat mf = new MessageFormat(Messages.getString("LocalController.50"));
+				throw new IOException(mf.format(new String[] { language, xliffDocuments.get(i) }));
+			}
+			languages.add(language.toLowerCase());
+		}
+		ResourceGovernor governor = ResourceGovernor.getInstance();
+		List<ProjectEvent> imported = new Vector<>();
+		List<JSONArray> errors = new Vector<>();
+		List<Callable<Void>> tasks = new Vector<>();
+		List<Long> estimates = new Vector<>();
+		for (int i = 0; i < xliffDocuments.size(); i++) {
+			String xliffDocument = xliffDocuments.get(i);
+			String targetFolder = targetFolders.get(i);
+			JSONArray fileErrors = new JSONArray();
+			errors.add(fileErrors);
+			tasks.add(() -> {
+				try {
+					JSONArray result = importFile(project, xliffDocument, targetFolder, updateTM, acceptUnapproved,
+							ignoreTagErrors, exportTmx, imported, logger);
+					for (int j = 0; j < result.length(); j++) {
+						JSONObject error = result.getJSONObject(j);
+						error.put("xliffFile", xliffDocument);
+						fileErrors.put(error);
+					}
+				} catch (SAXException | ParserConfigurationException | SQLException | URISyntaxException
+						| JSONException | ParseException e) {
+					throw new IOException(e.getMessage(), e);
+				}
+				return null;
+			});
+			estimates.add(governor.estimate(new File(xliffDocument)));
+		}
+		try {
+			governor.run(tasks, estimates, logger);
+		} finally {
+			// files imported before a failure still go to the project history
+			if (!imported.isEmpty()) {
+				recordImports(project, imported);
+			}
+		}
+		JSONArray tagErrors = new JSONArray();
+		for (int i = 0; i < errors.size(); i++) {
+			tagErrors.putAll(errors.get(i));
+		}
+		if (imported.size() == xliffDocuments.size()) {
+			logger.displaySuccess(Messages.getString("LocalController.24"));
+		}
+		return tagErrors;
+	}
+
+	private void recordImports(Project project, List<ProjectEvent> imported)
+			throws IOException, JSONException, ParseException {
+		for (int i = 0; i < imported.size(); i++) {
+			ProjectEvent event = imported.get(i);
+			project.getHistory().add(event);
+			project.setLanguageStatus(event.getLanguage(), Project.COMPLETED);
+		}
+		updateProject(project);
+		File projectFolder = new File(Preferences.getInstance().getProjectsFolder(), "" + project.getId());
+		for (int i = 0; i < imported.size(); i++) {
+			ImportJournal.clear(projectFolder, imported.get(i).getLanguage());
+		}
+	}
+
+	private static void moveFiles(File folder, File targetFolder) throws IOException {
+		File[] files = folder.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (int i = 0; i < files.length; i++) {
+			File target = new File(targetFolder, files[i].getName());
+			if (files[i].isDirectory()) {
+				moveFiles(files[i], target);
+			} else {
+				FileUtils.moveFile(files[i], target);
+			}
+		}
+	}
+
+	private JSONArray importFile(Project project, String xliffDocument, String targetFolder, boolean updateTM,
+			boolean acceptUnapproved, boolean ignoreTagErrors, boolean exportTmx, List<ProjectEvent> imported,
+			ILogger logger) throws NumberFormatException, IOException, SAXException, ParserConfigurationException,
+			SQLException, URISyntaxException, JSONException, ParseException {
 
 		logger.setStage(Messages.getString("LocalController.13"));
 
-		String workDocument = checkXliffVersion(xliffDocument);
+		// reject files of other tools, projects or languages before loading them
+		XliffProbe probe = XliffProbe.probe(new File(xliffDocument));
+		probe.checkTool();
+		if (getProjectLanguage(project, probe.getTargetLanguage()) == null) {
+			logger.displayError(Messages.getString("LocalController.15"));
+			return new JSONArray();
+		}
+		if (!probe.getProjectId().equals("" + project.getId())) {
+			logger.displayError(Messages.getString("LocalController.16"));
+			return new JSONArray();
+		}
+		Document doc = parseXliff(xliffDocument);
+		boolean converted = doc.getRootElement().getAttributeValue("version").startsWith("2.");
+		if (converted) {
+			synchronized (CONVERTERS) {
+				doc = new Xliff2Converter().convert(doc);
+			}
+		}
+		validateXliff(doc);
+		return importXliff(project, xliffDocument, converted, doc, targetFolder, updateTM, acceptUnapproved,
+				ignoreTagErrors, exportTmx, imported, logger);
+	}
 
-		Document doc = loadXliff(workDocument);
+	private JSONArray importXliff(Project project, String xliffDocument, boolean converted, Document doc,
+			String targetFolder, boolean updateTM, boolean acceptUnapproved, boolean ignoreTagErrors,
+			boolean exportTmx, List<ProjectEvent> imported, ILogger logger) throws NumberFormatException,
+			IOException, SAXException, ParserConfigurationException, SQLException, URISyntaxException, JSONException,
+			ParseException {
 		Element root = doc.getRootElement();
 		removeAltTrans(root);
-		if (!xliffDocument.equals(workDocument)) {
+		if (converted) {
 			// XLIFF 2.0
 			acceptUnapproved = true;
 		}
 		if (acceptUnapproved) {
 			approveAll(root);
 		}
+		JSONArray tagErrors = new JSONArray();
 		if (!ignoreTagErrors) {
-			String tagErrors = checkTags(root);
+			List<Element> segments = new Vector<>();
+			List<List<String>> segmentErrors = new Vector<>();
+			checkTags(root, segments, segmentErrors, tagErrors, logger);
 			if (!tagErrors.isEmpty()) {
 				String message = Messages.getString("LocalController.14") + "\n\n";
-				String report = TagErrorsReport.run(workDocument);
+				int maxErrors = maxTagErrors >= 0 ? maxTagErrors : TagErrorsReport.getDefaultMaxErrors();
+				String report = new TagErrorsReport(maxErrors).write(segments, segmentErrors, xliffDocument);
 				MessageFormat mf = new MessageFormat(message);
 				logger.displayError(mf.format(new String[] { report }));
-				return;
-			}
-		}
-		if (!xliffDocument.equals(workDocument) || acceptUnapproved) {
-			// save changes
-			XMLOutputter outputter = new XMLOutputter();
-			outputter.preserveSpace(true);
-			Indenter.indent(root, 2);
-			try (FileOutputStream outputFile = new FileOutputStream(workDocument)) {
-				outputter.output(doc, outputFile);
+				return tagErrors;
 			}
 		}
 		String[] toolData = getToolData(root);
-		String targetLanguage = toolData[0];
-		List<String> langs = project.getLanguages();
-		boolean found = false;
-		for (int i = 0; i < langs.size(); i++) {
-			if (langs.get(i).equals(targetLanguage)) {
-				found = true;
-				break;
-			}
-		}
-		if (!found) {
-			for (int i = 0; i < langs.size(); i++) {
-				if (targetLanguage.toLowerCase().startsWith(langs.get(i).toLowerCase())) {
-					targetLanguage = langs.get(i);
-					found = true;
-					break;
-				}
-			}
-		}
-		if (!found) {
+		String targetLanguage = getProjectLanguage(project, toolData[0]);
+		if (targetLanguage == null) {
 			logger.displayError(Messages.getString("LocalController.15"));
-			return;
+			return tagErrors;
 		}
 		String projectID = toolData[1];
 		String build = toolData[2];
 		if (!projectID.equals("" + project.getId())) {
 			logger.displayError(Messages.getString("LocalController.16"));
-			return;
-		}
-
-		Xliff2DitaMap.setDataLogger(logger);
-		logger.setStage(Messages.getString("LocalController.17"));
-		List<String> res = Merge.merge(xliffDocument, targetFolder, Preferences.getInstance().getCatalogFile(),
-				acceptUnapproved);
-		if (!Constants.SUCCESS.equals(res.get(0))) {
-			logger.displayError(res.get(1));
-			return;
+			return tagErrors;
 		}
 
-		if (updateTM) {
-			if (logger.isCancelled()) {
-				logger.displayError(Messages.getString("LocalController.12"));
-				return;
+		Preferences preferences = Preferences.getInstance();
+		File projectFolder = new File(preferences.getProjectsFolder(), "" + project.getId());
+		ImportJournal journal = new ImportJournal(projectFolder, targetLanguage, build, new File(xliffDocument));
+		if (journal.isResumed()) {
+			MessageFormat mf = new MessageFormat(Messages.getString("LocalController.45"));
+			logger.log(mf.format(new String[] { journal.getCompletedSteps() }));
+		}
+		String mergeDocument = xliffDocument;
+		File deltaBase = getDeltaBase(project, targetLanguage, build);
+		File fullDocument = null;
+		// only the segments sent for translation go to the memory
+		Element translated = root;
+		if (deltaBase.exists()) {
+			logger.log(Messages.getString("LocalController.40"));
+			doc = restoreDelta(doc, deltaBase);
+			root = doc.getRootElement();
+		}
+
+		// the merge is written to a staging folder and published once complete
+		if (!journal.isDone(ImportJournal.MERGED)) {
+			String mapName = new File(project.getMap()).getName();
+			boolean parallelMerge = MergeDriver.accepts(root, mapName);
+			// Merge reads files, and converted documents exist only in memory
+			if ((converted || deltaBase.exists()) && !parallelMerge) {
+				fullDocument = File.createTempFile("merge", ".xlf", projectFolder);
+				try (FileOutputStream output = new FileOutputStream(fullDocument)) {
+					XMLOutputter outputter = new XMLOutputter();
+					outputter.preserveSpace(true);
+					outputter.output(doc, output);
+				}
+				mergeDocument = fullDocument.getAbsolutePath();
 			}
-			logger.setStage(Messages.getString("LocalController.18"));
-			logger.log("");
-			logger.log(xliffDocument.substring(0, xliffDocument.lastIndexOf('.')) + ".tmx");
-			String tmxFile = xliffDocument.substring(0, xliffDocument.lastIndexOf('.')) + ".tmx";
-			TmxExporter.export(workDocument, tmxFile, Preferences.getInstance().getCatalogFile());
-			logger.setStage(Messages.getString("LocalController.19"));
-			Memory m = getMemory(project.getId());
-			if (m != null) {
-				ITmEngine database = getTMEngine(m.getId());
-				int result = database.storeTMX(tmxFile, project.getTitle(), "", "");
-				database.close();
-				MessageFormat mf = new MessageFormat(Messages.getString("LocalController.20"));
-				logger.log(mf.format(new String[] { "" + result }));
-				m.setLastUpdate(new Date());
-				updateMemory(m);
+			File staging = journal.newStaging();
+			List<String> res;
+			if (parallelMerge) {
+				logger.setStage(Messages.getString("LocalController.17"));
+				MergeDriver driver = new MergeDriver(root, mapName, staging.getAbsolutePath(),
+						preferences.getCatalogFile(), acceptUnapproved);
+				res = driver.merge(projectFolder, logger);
 			} else {
-				logger.displayError(Messages.getString("LocalController.21"));
-				return;
+				try {
+					synchronized (CONVERTERS) {
+						Xliff2DitaMap.setDataLogger(logger);
+						logger.setStage(Messages.getString("LocalController.17"));
+						res = Merge.merge(mergeDocument, staging.getAbsolutePath(), preferences.getCatalogFile(),
+								acceptUnapproved);
+					}
+				} finally {
+					if (fullDocument != null) {
+						Files.delete(fullDocument.toPath());
+					}
+				}
+			}
+			if (!Constants.SUCCESS.equals(res.get(0))) {
+				journal.discard();
+				logger.displayError(res.get(1));
+				return tagErrors;
+			}
+			journal.done(ImportJournal.MERGED);
+		}
+		if (!journal.isDone(ImportJournal.PUBLISHED)) {
+			File staging = journal.getStaging();
+			if (incrementalMerge) {
+				File manifestFile = new File(new File(projectFolder, "merge"), targetLanguage + ".json");
+				MergeManifest manifest = new MergeManifest(manifestFile, new File(targetFolder));
+				int written = manifest.publish(staging);
+				MessageFormat mf = new MessageFormat(Messages.getString("LocalController.43"));
+				logger.log(mf.format(new String[] { "" + written, "" + manifest.getSkipped() }));
+			} else {
+				moveFiles(staging, new File(targetFolder));
+			}
+			journal.done(ImportJournal.PUBLISHED);
+			journal.deleteStaging();
+		}
+
+		synchronized (CONVERTERS) {
+			TmxBuilder tmxBuilder = new TmxBuilder(translated);
+			if (exportTmx && !journal.isDone(ImportJournal.TMX)) {
+				logger.setStage(Messages.getString("LocalController.18"));
+				logger.log("");
+				File tmxFile = new File(xliffDocument.substring(0, xliffDocument.lastIndexOf('.')) + ".tmx");
+				logger.log(tmxFile.getAbsolutePath());
+				File temp = File.createTempFile("tmx", ".tmp", projectFolder);
+				tmxBuilder.write(temp);
+				FileUtils.moveFile(temp, tmxFile);
+				journal.done(ImportJournal.TMX);
+			}
+			if (updateTM && !journal.isDone(ImportJournal.MEMORY)) {
+				if (logger.isCancelled()) {
+					logger.displayError(Messages.getString("LocalController.12"));
+					return tagErrors;
+				}
+				logger.setStage(Messages.getString("LocalController.41"));
+				Memory m = getMemory(project.getId());
+				if (m != null) {
+					int result = TmUpdateQueue.getInstance().add(m.getId(), tmxBuilder, project.getTitle());
+					MessageFormat mf = new MessageFormat(Messages.getString("LocalController.44"));
+					logger.log(mf.format(new String[] { "" + result }));
+					journal.done(ImportJournal.MEMORY);
+				} else {
+					logger.displayError(Messages.getString("LocalController.21"));
+					return tagErrors;
+				}
 			}
 		}
 
-		Preferences preferences = Preferences.getInstance();
-		File projectFolder = new File(preferences.getProjectsFolder(), "" + project.getId());
-		File languageFolder = new File(projectFolder, targetLanguage);
-		if (!languageFolder.exists()) {
-			languageFolder.mkdirs();
-		}
 		if (logger.isCancelled()) {
 			logger.displayError(Messages.getString("LocalController.12"));
-			return;
+			return tagErrors;
 		}
 		logger.setStage(Messages.getString("LocalController.22"));
 		logger.log(Messages.getString("LocalController.23"));
-		try (FileOutputStream output = new FileOutputStream(new File(languageFolder, "build_" + build + ".xlf"))) {
-			XMLOutputter outputter = new XMLOutputter();
-			outputter.preserveSpace(true);
-			outputter.output(doc, output);
-		}
-		if (!xliffDocument.equals(workDocument)) {
-			File f = new File(workDocument);
-			Files.delete(f.toPath());
-		}
-		project.getHistory().add(new ProjectEvent(ProjectEvent.XLIFF_IMPORTED, new Date(),
-				targetLanguage, Integer.parseInt(build)));
-		project.setLanguageStatus(targetLanguage, Project.COMPLETED);
-		updateProject(project);
-		logger.displaySuccess(Messages.getString("LocalController.24"));
+		if (!journal.isDone(ImportJournal.ARCHIVED)) {
+			BuildArchive archive = new BuildArchive(projectFolder);
+			int segments = archive.store(doc, targetLanguage, Integer.parseInt(build));
+			new BuildCatalog(projectFolder).add(targetLanguage, Integer.parseInt(build),
+					archive.getFile(targetLanguage, Integer.parseInt(build)), segments);
+			journal.done(ImportJournal.ARCHIVED);
+		}
+		Files.deleteIfExists(deltaBase.toPath());
+		imported.add(new ProjectEvent(ProjectEvent.XLIFF_IMPORTED, new Date(), targetLanguage,
+				Integer.parseInt(build)));
+		return tagErrors;
 	}
 
-	private static String checkXliffVersion(String xliffDocument)
+	private static Document parseXliff(String xliffDocument)
 			throws SAXException, IOException, ParserConfigurationException, URISyntaxException {
 		SAXBuilder builder = new SAXBuilder();
 		builder.setEntityResolver(CatalogBuilder.getCatalog(Preferences.getInstance().getCatalogFile()));
@@ -728,16 +1167,11 @@ public class LocalController {
 		if (!root.getName().equals("xliff")) {
 			throw new IOException(Messages.getString("LocalController.25"));
 		}
-		if (root.getAttributeValue("version").equals("1.2")) {
-			return xliffDocument;
-		}
-		if (root.getAttributeValue("version").startsWith("2.")) {
-			String name = xliffDocument.substring(0, xliffDocument.lastIndexOf(".")) + "_12"
-					+ xliffDocument.substring(xliffDocument.lastIndexOf("."));
-			FromXliff2.run(xliffDocument, name, Preferences.getInstance().getCatalogFile());
-			return name;
+		String version = root.getAttributeValue("version");
+		if (!version.equals("1.2") && !version.startsWith("2.")) {
+			throw new IOException(Messages.getString("LocalController.25"));
 		}
-		return null;
+		return doc;
 	}
 
 	private void approveAll(Element e) {
@@ -754,91 +1188,48 @@ public class LocalController {
 		}
 	}
 
-	private String checkTags(Element root) {
-
+	private String checkTags(Element root, List<Element> segments, List<List<String>> segmentErrors,
+			JSONArray tagErrors, ILogger logger) throws IOException {
 		StringBuilder result = new StringBuilder();
-
-		Element source;
-		Element target;
-		List<String> srclist;
-		List<String> trglist;
-		List<Element> segments = new Vector<>();
-
-		createList(root, segments);
-
+		List<String> originals = new Vector<>();
+		List<Element> files = root.getChildren("file");
+		for (int i = 0; i < files.size(); i++) {
+			createList(files.get(i), segments);
+			String original = files.get(i).getAttributeValue("original");
+			while (originals.size() < segments.size()) {
+				originals.add(original);
+			}
+		}
+		segmentErrors.addAll(new TagValidator().checkAll(segments, true, logger));
 		int size = segments.size();
 		for (int i = 0; i < size; i++) {
-
-			Element e = segments.get(i);
-			if ("no".equals(e.getAttributeValue("approved", "no"))) {
-				continue;
-			}
-			source = e.getChild("source");
-			target = e.getChild("target");
-			if (target == null) {
-				continue;
-			}
-			srclist = buildTagList(source);
-			trglist = buildTagList(target);
-
-			/* check empty target */
-			if (!trglist.isEmpty()) {
-				int tLength = trglist.size();
-				int j;
-				if (tLength > srclist.size()) {
-					result.append(i + 1);
-					result.append(": ");
-					result.append(Messages.getString("LocalController.26"));
-					result.append('\n');
-				} else if (tLength < srclist.size()) {
-					result.append(i + 1);
-					result.append(": ");
-					result.append(Messages.getString("LocalController.27"));
-					result.append('\n');
-				} else {
-					for (j = 0; j < srclist.size(); j++) {
-						String es = srclist.get(j);
-						boolean paired = false;
-						for (int k = 0; k < trglist.size(); k++) {
-							String et = trglist.get(k);
-							if (es.equals(et)) {
-								paired = true;
-								trglist.remove(k);
-								break;
-							}
-						}
-						if (!paired) {
-							result.append(i + 1);
-							result.append(": ");
-							result.append(Messages.getString("LocalController.28"));
-							result.append('\n');
-						}
-					}
-					trglist = buildTagList(target);
-					for (j = 0; j < srclist.size(); j++) {
-						String es = srclist.get(j);
-						String et = trglist.get(j);
-						if (!es.equals(et)) {
-							result.append(i + 1);
-							result.append(": ");
-							result.append(Messages.getString("LocalController.29"));
-							result.append('\n');
-						}
-					}
-				}
-			} else {
-				// empty target
-				if (!srclist.isEmpty()) {
-					result.append(i + 1);
-					result.append(": ");
-					result.append(Messages.getString("LocalController.30"));
-					result.append('\n');
-				}
+			List<String> errors = segmentErrors.get(i);
+			for (int j = 0; j < errors.size(); j++) {
+				result.append(i + 1);
+				result.append(": ");
+				result.append(getTagErrorMessage(errors.get(j)));
+				result.append('\n');
+				tagErrors.put(TagValidator.toJSON(i + 1, segments.get(i), originals.get(i), errors.get(j)));
 			}
 		}
 		return result.toString();
 	}
 
+	private static String getTagErrorMessage(String error) {
+		switch (error) {
+			case TagValidator.EXTRA:
+				return Messages.getString("LocalController.26");
+			case TagValidator.MISSING:
+				return Messages.getString("LocalController.27");
+			case TagValidator.UNPAIRED:
+				return Messages.getString("LocalController.28");
+			case TagValidator.REORDERED:
+				return Messages.getString("LocalController.29");
+			default:
+				return Messages.getString("LocalController.30");
+		}
+	}
+
 	private void createList(Element root, List<Element> segments) {
 		List<Element> children = root.getChildren();
 		Iterator<Element> it = children.iterator();
@@ -852,66 +1243,6 @@ public class LocalController {
 		}
 	}
 
-	public static List<String> buildTagList(Element e) {
-		List<String> result = new Vector<>();
-		List<XMLNode> content = e.getContent();
-		Iterator<XMLNode> i = content.iterator();
-		while (i.hasNext()) {
-			XMLNode o = i.next();
-			if (o.getNodeType() == XMLNode.ELEMENT_NODE) {
-				Element el = (Element) o;
-				if (el.getName().equals("ph")
-						|| el.getName().equals("bpt")
-						|| el.getName().equals("ept")
-						|| el.getName().equals("it")) {
-					if (!el.getChildren().isEmpty()) {
-						String open = "<" + el.getName() + " ";
-						List<Attribute> att = el.getAttributes();
-						for (int j = 0; j < att.size(); j++) {
-							Attribute a = att.get(j);
-							open = open + a.getName() + "=\"" + a.getValue().replace("\"", "&quot;") + "\" ";
-						}
-						result.add(open.substring(0, open.length() - 1) + ">");
-						List<XMLNode> list = el.getContent();
-						for (int j = 0; j < list.size(); j++) {
-							XMLNode n = list.get(j);
-							if (n.getNodeType() == XMLNode.ELEMENT_NODE) {
-								result.addAll(buildTagList((Element) n));
-							}
-						}
-						result.add("</" + el.getName() + ">");
-					} else {
-						result.add(el.toString());
-					}
-				} else if (el.getName().equals("mrk")
-						|| el.getName().equals("g")
-						|| el.getName().equals("sub")) {
-					String open = "<" + el.getName() + " ";
-					List<Attribute> att = el.getAttributes();
-					for (int j = 0; j < att.size(); j++) {
-						Attribute a = att.get(j);
-						open = open + a.getName() + "=\"" + a.getValue().replace("\"", "&quot;") + "\" ";
-					}
-					result.add(open.substring(0, open.length() - 1) + ">");
-					List<XMLNode> list = el.getContent();
-					for (int j = 0; j < list.size(); j++) {
-						XMLNode n = list.get(j);
-						if (n.getNodeType() == XMLNode.ELEMENT_NODE) {
-							result.addAll(buildTagList((Element) n));
-						}
-					}
-					result.add("</" + el.getName() + ">");
-				} else if (el.getName().equals("x") || el.getName().equals("bx") || el.getName().equals("ex")) {
-					result.add(el.toString());
-				} else {
-					// foreign element?
-					result.add(el.toString());
-				}
-			}
-		}
-		return result;
-	}
-
 	private void removeAltTrans(Element e) {
 		List<Element> children = e.getChildren();
 		List<Element> matches = e.getChildren("alt-trans");
@@ -926,17 +1257,32 @@ public class LocalController {
 		}
 	}
 
+	/**
+	 * Returns the project language that matches the target language of an XLIFF
+	 * file, or null if the project does not have it.
+	 */
+	private static String getProjectLanguage(Project project, String targetLanguage) {
+		List<String> langs = project.getLanguages();
+		for (int i = 0; i < langs.size(); i++) {
+			if (langs.get(i).equals(targetLanguage)) {
+				return langs.get(i);
+			}
+		}
+		for (int i = 0; i < langs.size(); i++) {
+			if (targetLanguage.toLowerCase().startsWith(langs.get(i).toLowerCase())) {
+				return langs.get(i);
+			}
+		}
+		return null;
+	}
+
 	private static String[] getToolData(Element root) {
 		Element file = root.getChild("file");
 		return new String[] { file.getAttributeValue("target-language"),
 				file.getAttributeValue("product-version"), file.getAttributeValue("build-num") };
 	}
 
-	private static Document loadXliff(String fileName)
-			throws SAXException, IOException, ParserConfigurationException, URISyntaxException {
-		SAXBuilder builder = new SAXBuilder();
-		builder.setEntityResolver(CatalogBuilder.getCatalog(Preferences.getInstance().getCatalogFile()));
-		Document doc = builder.build(fileName);
+	private static void validateXliff(Document doc) throws IOException {
 		Element root = doc.getRootElement();
 		if (!root.getName().equals("xliff")) {
 			throw new IOException(Messages.getString("LocalController.31"));
@@ -949,7 +1295,6 @@ public class LocalController {
 			throw new IOException(Messages.getString("LocalController.33"));
 		}
 		checkXliffMarkup(doc.getRootElement());
-		return doc;
 	}
 
 	private static void checkXliffMarkup(Element e) {
@@ -997,9 +1342,19 @@ public class LocalController {
 	public int importTMX(Memory memory, String tmxFile)
 			throws SQLException, IOException, SAXException, ParserConfigurationException, JSONException,
 			URISyntaxException {
+		return importTMX(memory, tmxFile, new SimpleLogger(false));
+	}
+
+	public int importTMX(Memory memory, String tmxFile, ILogger logger)
+			throws SQLException, IOException, SAXException, ParserConfigurationException, JSONException,
+			URISyntaxException {
 		ITmEngine database = getTMEngine(memory.getId());
-		int result = database.storeTMX(tmxFile, "", "", "");
-		database.close();
+		int result;
+		try {
+			result = new TmxImporter(database, logger).importFile(new File(tmxFile));
+		} finally {
+			database.close();
+		}
 		memory.setLastUpdate(new Date());
 		updateMemory(memory);
 		return result;
@@ -1025,6 +1380,10 @@ public class LocalController {
 	private List<Element> searchText(ITmEngine db, Element seg, String sourcelang, String targetlang,
 			float fuzzyLevel, boolean caseSensitive)
 			throws SAXException, IOException, ParserConfigurationException, SQLException, URISyntaxException {
+		return searchTranslations(db, seg, sourcelang, targetlang, fuzzyLevel, caseSensitive);
+	}
+
+	private void initCtypes() {
 		if (validCtypes == null) {
 			validCtypes = new Hashtable<>();
 			validCtypes.put("image", "");
@@ -1042,7 +1401,6 @@ public class LocalController {
 			phCtypes.put("pb", "");
 			phCtypes.put("lb", "");
 		}
-		return searchTranslations(db, seg, sourcelang, targetlang, fuzzyLevel, caseSensitive);
 	}
 
 	private List<Element> searchTranslations(ITmEngine database, Element seg, String srcLang, String tgtLang,
@@ -1269,6 +1627,251 @@ public class LocalController {
 		return match;
 	}
 
+	/**
+	 * Moves the units of a memory to another engine, {@link Memory#SQLITE} or
+	 * {@link Memory#MAPDB}. The new database is loaded from an export of the
+	 * memory in a folder next to it and replaces the old one only when complete.
+	 *
+	 * @return the number of units moved
+	 */
+	public int migrateMemory(Memory memory, String engine) throws IOException, SQLException, SAXException,
+			ParserConfigurationException, JSONException, URISyntaxException {
+		if (!Memory.SQLITE.equals(engine) && !Memory.MAPDB.equals(engine)) {
+			MessageFormat mf = new MessageFormat(Messages.getString("LocalController.46"));
+			throw new IOException(mf.format(new String[] { engine }));
+		}
+		if (engine.equals(getEngine(memory.getId()))) {
+			MessageFormat mf = new MessageFormat(Messages.getString("LocalController.47"));
+			throw new IOException(mf.format(new String[] { engine }));
+		}
+		File tmx = File.createTempFile("migration", ".tmx", Preferences.getInstance().getMemoriesFolder());
+		try {
+			ITmEngine source = getTMEngine(memory.getId());
+			try {
+				Set<String> languages = source.getAllLanguages();
+				if (!languages.isEmpty()) {
+					source.exportMemory(tmx.getAbsolutePath(), languages, memory.getSrcLanguage().getCode());
+				}
+			} finally {
+				source.close();
+			}
+			int count = rebuildMemory(memory, engine, tmx);
+			memory.setEngine(engine);
+			updateMemory(memory);
+			return count;
+		} finally {
+			Files.deleteIfExists(tmx.toPath());
+		}
+	}
+
+	/**
+	 * Removes duplicate units from a memory with a {@link TmCompactor} policy and
+	 * loads the remaining units into a new database, which also rebuilds the
+	 * trigram index and drops the space left by removed units.
+	 *
+	 * @return a report with the number of units, the size in bytes of the memory
+	 *         folder before and after and the time taken by each step
+	 */
+	public JSONObject compactMemory(Memory memory, String policy, ILogger logger) throws IOException,
+			SQLException, SAXException, ParserConfigurationException, JSONException, URISyntaxException {
+		if (!TmCompactor.IDENTICAL.equals(policy) && !TmCompactor.NEWEST.equals(policy)) {
+			MessageFormat mf = new MessageFormat(Messages.getString("LocalController.48"));
+			throw new IOException(mf.format(new String[] { policy }));
+		}
+		File memoryFolder = new File(Preferences.getInstance().getMemoriesFolder(), "" + memory.getId());
+		String engineName = getEngine(memory.getId());
+		JSONObject result = new JSONObject();
+		result.put("engine", engineName);
+		result.put("policy", policy);
+		File tmx = File.createTempFile("compaction", ".tmx", Preferences.getInstance().getMemoriesFolder());
+		try {
+			long start = System.currentTimeMillis();
+			ITmEngine engine = getTMEngine(memory.getId());
+			result.put("sizeBefore", getSize(memoryFolder));
+			TmCompactor compactor = new TmCompactor(engine, memory.getSrcLanguage().getCode(), policy, logger);
+			int kept;
+			try {
+				kept = compactor.compact(tmx);
+			} finally {
+				engine.close();
+			}
+			result.put("unitsBefore", compactor.getUnits());
+			result.put("unitsAfter", kept);
+			result.put("scanMillis", System.currentTimeMillis() - start);
+			start = System.currentTimeMillis();
+			rebuildMemory(memory, engineName, tmx);
+			result.put("rebuildMillis", System.currentTimeMillis() - start);
+			result.put("sizeAfter", getSize(memoryFolder));
+		} finally {
+			Files.deleteIfExists(tmx.toPath());
+		}
+		memory.setLastUpdate(new Date());
+		updateMemory(memory);
+		return result;
+	}
+
+	private static long getSize(File file) {
+		File[] children = file.listFiles();
+		if (children == null) {
+			return file.length();
+		}
+		long size = 0l;
+		for (int i = 0; i < children.length; i++) {
+			size += getSize(children[i]);
+		}
+		return size;
+	}
+
+	/**
+	 * Replaces the database of a memory with a new one of the given engine,
+	 * loaded from a TMX file in a folder next to the memory folder, together
+	 * with its trigram index. The old folder is renamed to a backup before the
+	 * new one is moved in and deleted after, so that a crash between the two
+	 * moves leaves a folder that {@link #getEngine} can put back.
+	 *
+	 * @return the number of units loaded
+	 */
+	private static int rebuildMemory(Memory memory, String engine, File tmx)
+			throws IOException, SQLException, SAXException, ParserConfigurationException, URISyntaxException,
+			JSONException {
+		String id = "" + memory.getId();
+		File memoriesFolder = Preferences.getInstance().getMemoriesFolder();
+		File memoryFolder = new File(memoriesFolder, id);
+		File temp = new File(memoriesFolder, id + ".rebuilding");
+		try {
+			if (temp.exists()) {
+				FileUtils.deleteFolder(temp);
+			}
+			int count = 0;
+			ITmEngine target = Memory.MAPDB.equals(engine) ? new MapDbEngine(id, temp)
+					: new IndexedTmEngine(new SqliteDatabase(temp.getName(), memoriesFolder.getAbsolutePath()),
+							temp);
+			try {
+				if (tmx.length() > 0) {
+					count = new TmxImporter(target, new SimpleLogger(false)).importFile(tmx);
+				}
+			} finally {
+				target.close();
+			}
+			File backup = new File(memoriesFolder, id + ".replaced");
+			if (backup.exists()) {
+				FileUtils.deleteFolder(backup);
+			}
+			if (memoryFolder.exists()) {
+				Files.move(memoryFolder.toPath(), backup.toPath());
+			}
+			Files.move(temp.toPath(), memoryFolder.toPath());
+			if (backup.exists()) {
+				FileUtils.deleteFolder(backup);
+			}
+			return count;
+		} finally {
+			if (temp.exists()) {
+				FileUtils.deleteFolder(temp);
+			}
+		}
+	}
+
+	/**
+	 * Times exact and fuzzy lookups with segments taken from the memory, to
+	 * compare engines on the same data before and after
+	 * {@link #migrateMemory}. Each fuzzy query is a segment without its last
+	 * word.
+	 */
+	public JSONObject benchmarkMemory(Memory memory, int queries) throws IOException, SQLException, SAXException,
+			ParserConfigurationException, JSONException, URISyntaxException {
+		String srcLang = LanguageUtils.normalizeCode(memory.getSrcLanguage().getCode());
+		List<String[]> samples = new Vector<>();
+		File tmx = File.createTempFile("benchmark", ".tmx");
+		try {
+			ITmEngine engine = getTMEngine(memory.getId());
+			try {
+				Set<String> languages = engine.getAllLanguages();
+				if (!languages.isEmpty()) {
+					engine.exportMemory(tmx.getAbsolutePath(), languages, memory.getSrcLanguage().getCode());
+					SAXBuilder builder = new SAXBuilder();
+					builder.setEntityResolver(CatalogBuilder.getCatalog(Preferences.getInstance().getCatalogFile()));
+					builder.setContentHandler(new TmxUnitHandler(new TmxUnitHandler.Store() {
+
+						@Override
+						public void storeTu(Element tu) throws IOException {
+							if (samples.size() < queries) {
+								addSample(tu, srcLang, samples);
+							}
+						}
+
+						@Override
+						public void commit() {
+							// nothing to store
+						}
+					}));
+					builder.build(tmx);
+				}
+			} finally {
+				engine.close();
+			}
+		} finally {
+			Files.deleteIfExists(tmx.toPath());
+		}
+		long start = System.nanoTime();
+		ITmEngine engine = getTMEngine(memory.getId());
+		long open = System.nanoTime() - start;
+		long exactTime = 0;
+		long fuzzyTime = 0;
+		int exactHits = 0;
+		int fuzzyHits = 0;
+		try {
+			for (int i = 0; i < samples.size(); i++) {
+				String[] sample = samples.get(i);
+				start = System.nanoTime();
+				if (!engine.searchTranslation(sample[0], srcLang, sample[1], 100, true).isEmpty()) {
+					exactHits++;
+				}
+				exactTime += System.nanoTime() - start;
+				int space = sample[0].lastIndexOf(' ');
+				String fuzzy = space > 0 ? sample[0].substring(0, space) : sample[0];
+				start = System.nanoTime();
+				if (!engine.searchTranslation(fuzzy, srcLang, sample[1], 70, true).isEmpty()) {
+					fuzzyHits++;
+				}
+				fuzzyTime += System.nanoTime() - start;
+			}
+		} finally {
+			engine.close();
+		}
+		JSONObject result = new JSONObject();
+		result.put("engine", getEngine(memory.getId()));
+		result.put("queries", samples.size());
+		result.put("openMillis", open / 1000000);
+		result.put("exactHits", exactHits);
+		result.put("exactMillis", exactTime / 1000000);
+		result.put("fuzzyHits", fuzzyHits);
+		result.put("fuzzyMillis", fuzzyTime / 1000000);
+		return result;
+	}
+
+	private static void addSample(Element tu, String srcLang, List<String[]> samples) throws IOException {
+		String text = null;
+		String target = null;
+		List<Element> tuvs = tu.getChildren("tuv");
+		for (int i = 0; i < tuvs.size(); i++) {
+			Element tuv = tuvs.get(i);
+			Element seg = tuv.getChild("seg");
+			String lang = LanguageUtils.normalizeCode(tuv.getAttributeValue("xml:lang"));
+			if (seg == null || lang == null) {
+				continue;
+			}
+			if (srcLang.equals(lang)) {
+				text = TMUtils.extractText(seg);
+			} else if (target == null) {
+				target = lang;
+			}
+		}
+		if (text != null && target != null && !text.isBlank()) {
+			samples.add(new String[] { text, target });
+		}
+	}
+
 	public void exportTMX(Memory memory, String file) throws IOException, SQLException, JSONException, SAXException,
 			ParserConfigurationException, URISyntaxException {
 		ITmEngine database = getTMEngine(memory.getId());
@@ -1277,6 +1880,30 @@ public class LocalController {
 		database.close();
 	}
 
+	/**
+	 * Exports the units of the memory that match the given filters, reading and
+	 * writing one unit at a time. Null filters select everything.
+	 */
+	public int exportTMX(Memory memory, String file, Set<String> languages, Date since, String project,
+			boolean compressed, ILogger logger) throws IOException, SQLException, JSONException, SAXException,
+			ParserConfigurationException, URISyntaxException {
+		ITmEngine database = getTMEngine(memory.getId());
+		try {
+			StreamingTmxExporter exporter = new StreamingTmxExporter(database, logger);
+			if (languages != null) {
+				exporter.setLanguages(languages);
+			}
+			if (since != null) {
+				exporter.setChangedSince(since);
+			}
+			exporter.setProject(project);
+			exporter.setCompressed(compressed);
+			return exporter.export(new File(file), memory.getSrcLanguage().getCode());
+		} finally {
+			database.close();
+		}
+	}
+
 	public Project getProject(long id) throws IOException, JSONException, ParseException {
 		if (projectsManager == null) {
 			Preferences preferences = Preferences.getInstance();
@@ -0,0 +1,441 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.Vector;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Fun;
+import org.mapdb.Fun.Tuple3;
+import org.xml.sax.SAXException;
+
+import com.maxprograms.languages.LanguageUtils;
+import com.maxprograms.swordfish.tm.ITmEngine;
+import com.maxprograms.swordfish.tm.Match;
+import com.maxprograms.swordfish.tm.TMUtils;
+import com.maxprograms.utils.FileUtils;
+import com.maxprograms.utils.Preferences;
+import com.maxprograms.xml.CatalogBuilder;
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.SAXBuilder;
+
+/**
+ * Memory engine that keeps its units in a MapDB file,
+ * <code>memories/&lt;id&gt;/mapdb/memory</code>, memory mapped outside the
+ * Java heap. Units are kept as TMX in a hash map keyed by unit id; a B-tree of
+ * language, text and unit id answers exact and concordance lookups, and a
+ * {@link TrigramIndex} in the same folder selects the fuzzy candidates.
+ * <p>
+ * TMX files are loaded in transactions of {@value #BULK_COMMIT} units.
+ */
+public class MapDbEngine implements ITmEngine, TmxUnitHandler.Store, StreamingTmxExporter.Source {
+
+	static final int BULK_COMMIT = 20000;
+
+	private String name;
+	private File folder;
+	private File memoryFolder;
+	private DB db;
+	private Map<String, String> units;
+	private NavigableSet<Tuple3<String, String, String>> segments;
+	private Map<String, Integer> languages;
+	private Set<String> clients;
+	private Set<String> projects;
+	private Set<String> subjects;
+	private TrigramIndex index;
+	private Set<String> changed;
+	private SAXBuilder builder;
+
+	public MapDbEngine(String name, File memoryFolder) throws IOException {
+		this.name = name;
+		this.memoryFolder = memoryFolder;
+		folder = new File(memoryFolder, "mapdb");
+		if (!folder.exists()) {
+			Files.createDirectories(folder.toPath());
+		}
+		try {
+			db = DBMaker.newFileDB(new File(folder, "memory")).mmapFileEnableIfSupported()
+					.make();
+		} catch (Error e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		units = db.getHashMap("units");
+		segments = db.getTreeSet("segments");
+		languages = db.getHashMap("languages");
+		clients = db.getTreeSet("clients");
+		projects = db.getTreeSet("projects");
+		subjects = db.getTreeSet("subjects");
+		index = new TrigramIndex(new File(folder, "trigrams"));
+		if (!index.isReady()) {
+			buildIndex();
+		}
+		changed = new HashSet<>();
+		builder = new SAXBuilder();
+	}
+
+	private void buildIndex() throws IOException {
+		Iterator<String> it = units.values().iterator();
+		while (it.hasNext()) {
+			index.storeTu(parse(it.next()));
+		}
+		index.setReady();
+	}
+
+	private Element parse(String tu) throws IOException {
+		try {
+			return builder.build(new ByteArrayInputStream(tu.getBytes(StandardCharsets.UTF_8))).getRootElement();
+		} catch (SAXException | ParserConfigurationException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public String getType() {
+		return MapDbEngine.class.getName();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public void close() throws IOException {
+		commit();
+		index.close();
+		db.close();
+	}
+
+	@Override
+	public int storeTMX(String tmxFile, String project, String customer, String subject)
+			throws SAXException, IOException, ParserConfigurationException, SQLException, URISyntaxException {
+		// Fluenta does not tag imported units with project, customer or subject
+		TmxUnitHandler handler = new TmxUnitHandler(this, BULK_COMMIT);
+		SAXBuilder parser = new SAXBuilder();
+		parser.setEntityResolver(CatalogBuilder.getCatalog(Preferences.getInstance().getCatalogFile()));
+		parser.setContentHandler(handler);
+		parser.build(new File(tmxFile));
+		commit();
+		return handler.getCount();
+	}
+
+	@Override
+	public void exportMemory(String tmxFile, Set<String> langs, String srcLang) throws IOException {
+		Set<String> selected = new HashSet<>();
+		Iterator<String> it = langs.iterator();
+		while (it.hasNext()) {
+			selected.add(LanguageUtils.normalizeCode(it.next()));
+		}
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmxFile))) {
+			StreamingTmxExporter.writeHeader(out, srcLang);
+			Iterator<String> ut = units.values().iterator();
+			while (ut.hasNext()) {
+				Element tu = parse(ut.next());
+				List<Element> tuvs = tu.getChildren("tuv");
+				for (int i = 0; i < tuvs.size(); i++) {
+					Element tuv = tuvs.get(i);
+					if (!selected.contains(LanguageUtils.normalizeCode(tuv.getAttributeValue("xml:lang")))) {
+						tu.removeChild(tuv);
+					}
+				}
+				if (tu.getChildren("tuv").size() >= 2) {
+					writeString(out, tu.toString() + "\n");
+				}
+			}
+			writeString(out, "</body>\n");
+			writeString(out, "</tmx>");
+		}
+	}
+
+	private static void writeString(OutputStream out, String string) throws IOException {
+		StreamingTmxExporter.writeString(out, string);
+	}
+
+	@Override
+	public void readUnits(Set<String> langs, TmxUnitHandler.Store store)
+			throws IOException, SQLException, URISyntaxException {
+		Iterator<String> it = units.values().iterator();
+		while (it.hasNext()) {
+			store.storeTu(parse(it.next()));
+		}
+	}
+
+	@Override
+	public Set<String> getAllClients() {
+		return new TreeSet<>(clients);
+	}
+
+	@Override
+	public Set<String> getAllLanguages() {
+		return new TreeSet<>(languages.keySet());
+	}
+
+	@Override
+	public Set<String> getAllProjects() {
+		return new TreeSet<>(projects);
+	}
+
+	@Override
+	public Set<String> getAllSubjects() {
+		return new TreeSet<>(subjects);
+	}
+
+	@Override
+	public List<Match> searchTranslation(String searchStr, String srcLang, String tgtLang, int similarity,
+			boolean caseSensitive) throws IOException {
+		List<Match> result = new Vector<>();
+		String source = LanguageUtils.normalizeCode(srcLang);
+		String target = LanguageUtils.normalizeCode(tgtLang);
+		Map<String, Integer> matches = new LinkedHashMap<>();
+		if (caseSensitive) {
+			for (String tuid : Fun.filter(segments, source, searchStr)) {
+				matches.put(tuid, 100);
+			}
+		}
+		if (similarity < 100 || !caseSensitive) {
+			Map<String, Integer> fuzzy = index.search(searchStr, source, similarity, caseSensitive);
+			Iterator<Map.Entry<String, Integer>> ft = fuzzy.entrySet().iterator();
+			while (ft.hasNext()) {
+				Map.Entry<String, Integer> entry = ft.next();
+				matches.putIfAbsent(entry.getKey(), entry.getValue());
+			}
+		}
+		Iterator<Map.Entry<String, Integer>> it = matches.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Integer> entry = it.next();
+			Element tu = getTu(entry.getKey());
+			if (tu == null) {
+				continue;
+			}
+			Element srcTuv = null;
+			Element tgtTuv = null;
+			List<Element> tuvs = tu.getChildren("tuv");
+			for (int i = 0; i < tuvs.size(); i++) {
+				Element tuv = tuvs.get(i);
+				String lang = LanguageUtils.normalizeCode(tuv.getAttributeValue("xml:lang"));
+				if (source.equals(lang)) {
+					srcTuv = tuv;
+				} else if (target.equals(lang)) {
+					tgtTuv = tuv;
+				}
+			}
+			if (srcTuv == null || tgtTuv == null) {
+				continue;
+			}
+			Map<String, String> properties = new Hashtable<>();
+			List<Element> props = tu.getChildren("prop");
+			for (int i = 0; i < props.size(); i++) {
+				Element prop = props.get(i);
+				properties.put(prop.getAttributeValue("type"), prop.getText());
+			}
+			result.add(new Match(srcTuv, tgtTuv, entry.getValue(), name, properties));
+		}
+		return result;
+	}
+
+	@Override
+	public List<Element> searchAll(String searchStr, String srcLang, int similarity, boolean caseSensitive)
+			throws IOException {
+		List<Element> result = new Vector<>();
+		Map<String, Integer> matches = index.search(searchStr, srcLang, similarity, caseSensitive);
+		Iterator<String> it = matches.keySet().iterator();
+		while (it.hasNext()) {
+			Element tu = getTu(it.next());
+			if (tu != null) {
+				result.add(tu);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public List<Element> concordanceSearch(String searchStr, String srcLang, int limit, boolean isRegexp,
+			boolean caseSensitive) throws IOException {
+		List<Element> result = new Vector<>();
+		String lang = LanguageUtils.normalizeCode(srcLang);
+		Pattern pattern = null;
+		if (isRegexp) {
+			pattern = caseSensitive ? Pattern.compile(searchStr) : Pattern.compile(searchStr, Pattern.CASE_INSENSITIVE);
+		}
+		String lowerCase = searchStr.toLowerCase();
+		Set<String> found = new HashSet<>();
+		// null sorts before any text, so the tail starts at the first segment of the language
+		Iterator<Tuple3<String, String, String>> it = segments.tailSet(Fun.t3(lang, null, null)).iterator();
+		while (it.hasNext() && result.size() < limit) {
+			Tuple3<String, String, String> segment = it.next();
+			if (!lang.equals(segment.a)) {
+				break;
+			}
+			boolean matches;
+			if (pattern != null) {
+				matches = pattern.matcher(segment.b).find();
+			} else if (caseSensitive) {
+				matches = segment.b.contains(searchStr);
+			} else {
+				matches = segment.b.toLowerCase().contains(lowerCase);
+			}
+			if (matches && found.add(segment.c)) {
+				Element tu = getTu(segment.c);
+				if (tu != null) {
+					result.add(tu);
+				}
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void storeTu(Element tu) throws IOException {
+		String tuid = tu.getAttributeValue("tuid");
+		if (tuid.isEmpty()) {
+			tuid = UUID.randomUUID().toString();
+			tu.setAttribute("tuid", tuid);
+		}
+		String old = units.get(tuid);
+		if (old != null) {
+			removeSegments(tuid, parse(old));
+		}
+		List<Element> tuvs = tu.getChildren("tuv");
+		for (int i = 0; i < tuvs.size(); i++) {
+			Element tuv = tuvs.get(i);
+			Element seg = tuv.getChild("seg");
+			String lang = LanguageUtils.normalizeCode(tuv.getAttributeValue("xml:lang"));
+			if (seg == null || lang == null || lang.isEmpty()) {
+				continue;
+			}
+			segments.add(Fun.t3(lang, TMUtils.extractText(seg), tuid));
+			languages.merge(lang, 1, Integer::sum);
+		}
+		List<Element> props = tu.getChildren("prop");
+		for (int i = 0; i < props.size(); i++) {
+			Element prop = props.get(i);
+			String value = prop.getText();
+			if (value.isEmpty()) {
+				continue;
+			}
+			switch (prop.getAttributeValue("type")) {
+				case "customer":
+					clients.add(value);
+					break;
+				case "project":
+					projects.add(value);
+					break;
+				case "subject":
+					subjects.add(value);
+					break;
+				default:
+					// other properties are only kept in the unit
+			}
+		}
+		units.put(tuid, tu.toString());
+		index.storeTu(tu);
+		changed.add(tuid);
+	}
+
+	private void removeSegments(String tuid, Element tu) throws IOException {
+		List<Element> tuvs = tu.getChildren("tuv");
+		for (int i = 0; i < tuvs.size(); i++) {
+			Element tuv = tuvs.get(i);
+			Element seg = tuv.getChild("seg");
+			String lang = LanguageUtils.normalizeCode(tuv.getAttributeValue("xml:lang"));
+			if (seg == null || lang == null || lang.isEmpty()) {
+				continue;
+			}
+			if (segments.remove(Fun.t3(lang, TMUtils.extractText(seg), tuid))) {
+				languages.computeIfPresent(lang, (k, v) -> v > 1 ? v - 1 : null);
+			}
+		}
+	}
+
+	@Override
+	public void commit() throws IOException {
+		// a crash before the index is committed rebuilds it on the next open
+		index.clearReady();
+		db.commit();
+		index.setReady();
+		TmSnapshot.recordChanges(memoryFolder, changed);
+		changed.clear();
+	}
+
+	@Override
+	public Element getTu(String tuid) throws IOException {
+		String tu = units.get(tuid);
+		return tu != null ? parse(tu) : null;
+	}
+
+	@Override
+	public void removeTu(String tuid) throws IOException {
+		String tu = units.remove(tuid);
+		if (tu != null) {
+			removeSegments(tuid, parse(tu));
+			index.remove(tuid);
+			changed.add(tuid);
+			commit();
+		}
+	}
+
+	@Override
+	public void deleteDatabase() throws IOException {
+		index.close();
+		db.close();
+		FileUtils.deleteFolder(folder);
+	}
+
+	@Override
+	public JSONArray batchTranslate(JSONObject params) throws IOException, JSONException {
+		// same request and answer as the SQLite engine
+		JSONArray result = new JSONArray();
+		String srcLang = params.getString("srcLang");
+		String tgtLang = params.getString("tgtLang");
+		JSONArray array = params.getJSONArray("segments");
+		boolean caseSensitive = params.getBoolean("caseSensitiveMatches");
+		for (int i = 0; i < array.length(); i++) {
+			JSONObject segment = array.getJSONObject(i);
+			List<Match> matches = searchTranslation(segment.getString("pure"), srcLang, tgtLang, 60, caseSensitive);
+			JSONArray list = new JSONArray();
+			for (int j = 0; j < matches.size(); j++) {
+				list.put(matches.get(j).toJSON());
+			}
+			segment.put("matches", list);
+			result.put(segment);
+		}
+		return result;
+	}
+}
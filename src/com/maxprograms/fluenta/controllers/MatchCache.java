@@ -0,0 +1,321 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.Vector;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.mapdb.Atomic;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.xml.sax.SAXException;
+
+import com.maxprograms.swordfish.tm.ITmEngine;
+import com.maxprograms.swordfish.tm.Match;
+import com.maxprograms.utils.FileUtils;
+import com.maxprograms.utils.Preferences;
+import com.maxprograms.xml.Element;
+
+/**
+ * Memory engine that keeps the results of {@link #searchTranslation} in
+ * <code>memories/&lt;id&gt;/matchcache</code>, so that generating XLIFF again
+ * does not repeat the fuzzy lookups of unchanged segments. Other methods are
+ * passed to the wrapped engine.
+ * <p>
+ * Results are keyed by memory id, memory version, language pair, similarity
+ * threshold, case sensitivity and a hash of the NFC-normalized search text. The
+ * version is the memory's <code>lastUpdate</code> together with the
+ * {@link TmSnapshot} being searched, as <code>lastUpdate</code> is only stored
+ * to the minute; all cached results are discarded when it changes. The cache
+ * holds at most <code>performance/matchCacheSize</code> results from
+ * preferences.json, {@value #DEFAULT_SIZE} by default, evicting the oldest.
+ * <p>
+ * Threads of one process share the cache of a memory. A process that finds
+ * the cache in use by another process searches without it.
+ */
+public class MatchCache implements ITmEngine {
+
+	private static Logger logger = System.getLogger(MatchCache.class.getName());
+
+	public static final long DEFAULT_SIZE = 200000l;
+
+	private static final Map<Long, Shared> OPEN = new Hashtable<>();
+
+	private ITmEngine engine;
+	private long memoryId;
+	private String version;
+	private Shared shared;
+	private int hits;
+	private int misses;
+
+	/**
+	 * Cache database of a memory and the lock that keeps other processes out,
+	 * with the number of engines using them.
+	 */
+	private static class Shared {
+		FileChannel channel;
+		FileLock lock;
+		DB db;
+		Map<String, String> matches;
+		NavigableMap<Long, String> order;
+		Atomic.Long next;
+		long size;
+		int users;
+	}
+
+	public MatchCache(ITmEngine engine, long memoryId, String version) {
+		this.engine = engine;
+		this.memoryId = memoryId;
+		this.version = version;
+		shared = acquire(memoryId, version);
+	}
+
+	private static Shared acquire(long memoryId, String version) {
+		synchronized (OPEN) {
+			Shared result = OPEN.get(memoryId);
+			if (result == null) {
+				try {
+					result = open(memoryId, version);
+				} catch (IOException | Error e) {
+					logger.log(Level.WARNING, e.getMessage());
+					return null;
+				}
+				if (result == null) {
+					return null;
+				}
+				OPEN.put(memoryId, result);
+			}
+			result.users++;
+			return result;
+		}
+	}
+
+	private static Shared open(long memoryId, String version) throws IOException {
+		File folder = new File(Preferences.getInstance().getMemoriesFolder(), "" + memoryId);
+		if (!folder.exists()) {
+			return null;
+		}
+		Shared result = new Shared();
+		result.channel = FileChannel.open(new File(folder, "matchcache.lock").toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE);
+		try {
+			result.lock = result.channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			result.lock = null;
+		}
+		if (result.lock == null) {
+			result.channel.close();
+			return null;
+		}
+		try {
+			result.size = DEFAULT_SIZE;
+			String value = Preferences.getInstance().get("performance", "matchCacheSize", "");
+			if (!value.isEmpty()) {
+				result.size = Long.parseLong(value);
+			}
+			result.db = DBMaker.newFileDB(new File(folder, "matchcache")).make();
+			// the counter keeps size() from reading the whole map on every miss
+			result.matches = result.db.createHashMap("results").counterEnable().makeOrGet();
+			// insertion order of the keys, oldest first
+			result.order = result.db.getTreeMap("order");
+			result.next = result.db.getAtomicLong("next");
+			Atomic.String stored = result.db.getAtomicString("version");
+			if (!version.equals(stored.get())) {
+				result.matches.clear();
+				result.order.clear();
+				stored.set(version);
+				result.db.commit();
+			}
+			return result;
+		} catch (IOException | RuntimeException | Error e) {
+			if (result.db != null) {
+				result.db.close();
+			}
+			result.lock.release();
+			result.channel.close();
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	public int getHits() {
+		return hits;
+	}
+
+	public int getMisses() {
+		return misses;
+	}
+
+	@Override
+	public List<Match> searchTranslation(String searchStr, String srcLang, String tgtLang, int similarity,
+			boolean caseSensitive)
+			throws IOException, SAXException, ParserConfigurationException, SQLException, URISyntaxException {
+		if (shared == null) {
+			return engine.searchTranslation(searchStr, srcLang, tgtLang, similarity, caseSensitive);
+		}
+		String text = Normalizer.normalize(searchStr, Normalizer.Form.NFC);
+		String key = memoryId + "|" + version + "|" + srcLang + "|" + tgtLang + "|" + similarity + "|"
+				+ caseSensitive + "|" + FileUtils.checksum(text.getBytes(StandardCharsets.UTF_8));
+		String cached = shared.matches.get(key);
+		if (cached != null) {
+			hits++;
+			List<Match> result = new Vector<>();
+			JSONArray array = new JSONArray(cached);
+			for (int i = 0; i < array.length(); i++) {
+				result.add(new Match(array.getJSONObject(i)));
+			}
+			return result;
+		}
+		misses++;
+		List<Match> result = engine.searchTranslation(searchStr, srcLang, tgtLang, similarity, caseSensitive);
+		JSONArray array = new JSONArray();
+		for (int i = 0; i < result.size(); i++) {
+			array.put(result.get(i).toJSON());
+		}
+		synchronized (shared) {
+			shared.order.put(shared.next.incrementAndGet(), key);
+			shared.matches.put(key, array.toString());
+			while (shared.matches.size() > shared.size) {
+				shared.matches.remove(shared.order.pollFirstEntry().getValue());
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void close() throws IOException, SQLException, URISyntaxException {
+		engine.close();
+		if (shared == null) {
+			return;
+		}
+		synchronized (OPEN) {
+			shared.db.commit();
+			shared.users--;
+			if (shared.users == 0) {
+				OPEN.remove(memoryId);
+				shared.db.close();
+				shared.lock.release();
+				shared.channel.close();
+			}
+		}
+		shared = null;
+	}
+
+	@Override
+	public String getType() {
+		return engine.getType();
+	}
+
+	@Override
+	public String getName() {
+		return engine.getName();
+	}
+
+	@Override
+	public int storeTMX(String tmxFile, String project, String customer, String subject)
+			throws SAXException, IOException, ParserConfigurationException, SQLException, URISyntaxException {
+		return engine.storeTMX(tmxFile, project, customer, subject);
+	}
+
+	@Override
+	public void exportMemory(String tmxFile, Set<String> langs, String srcLang) throws IOException, SAXException,
+			ParserConfigurationException, SQLException, JSONException, URISyntaxException {
+		engine.exportMemory(tmxFile, langs, srcLang);
+	}
+
+	@Override
+	public Set<String> getAllClients() throws SQLException, IOException, URISyntaxException {
+		return engine.getAllClients();
+	}
+
+	@Override
+	public Set<String> getAllLanguages() throws SQLException, IOException, URISyntaxException {
+		return engine.getAllLanguages();
+	}
+
+	@Override
+	public Set<String> getAllProjects() throws SQLException, IOException, URISyntaxException {
+		return engine.getAllProjects();
+	}
+
+	@Override
+	public Set<String> getAllSubjects() throws SQLException, IOException, URISyntaxException {
+		return engine.getAllSubjects();
+	}
+
+	@Override
+	public List<Element> searchAll(String searchStr, String srcLang, int similarity, boolean caseSensitive)
+			throws IOException, SAXException, ParserConfigurationException, SQLException, URISyntaxException {
+		return engine.searchAll(searchStr, srcLang, similarity, caseSensitive);
+	}
+
+	@Override
+	public List<Element> concordanceSearch(String searchStr, String srcLang, int limit, boolean isRegexp,
+			boolean caseSensitive)
+			throws IOException, SAXException, ParserConfigurationException, SQLException, URISyntaxException {
+		return engine.concordanceSearch(searchStr, srcLang, limit, isRegexp, caseSensitive);
+	}
+
+	@Override
+	public void storeTu(Element tu) throws IOException, SQLException, URISyntaxException {
+		engine.storeTu(tu);
+	}
+
+	@Override
+	public void commit() throws SQLException, IOException, URISyntaxException {
+		engine.commit();
+	}
+
+	@Override
+	public Element getTu(String tuid)
+			throws IOException, SAXException, ParserConfigurationException, SQLException, URISyntaxException {
+		return engine.getTu(tuid);
+	}
+
+	@Override
+	public void removeTu(String tuid)
+			throws IOException, SAXException, ParserConfigurationException, SQLException, URISyntaxException {
+		engine.removeTu(tuid);
+	}
+
+	@Override
+	public void deleteDatabase() throws IOException, SQLException, URISyntaxException {
+		engine.deleteDatabase();
+	}
+
+	@Override
+	public JSONArray batchTranslate(JSONObject params)
+			throws IOException, SAXException, ParserConfigurationException, SQLException, URISyntaxException {
+		return engine.batchTranslate(params);
+	}
+}
@@ -16,7 +16,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.ParseException;
+import java.util.Date;
 import java.util.List;
 import java.util.Vector;
 
@@ -32,31 +34,59 @@ import com.maxprograms.utils.FileUtils;
 
 public class MemoriesManager {
 
+    // memories.json is shared by all managers and the update queue
+    private static final Object LOCK = new Object();
+
     private File memoriesFile;
     private JSONObject memories;
+    private long loaded;
 
     public MemoriesManager(File home) throws IOException, JSONException {
         if (!home.exists()) {
             Files.createDirectories(home.toPath());
         }
         memoriesFile = new File(home, "memories.json");
-        if (!memoriesFile.exists()) {
-            memories = new JSONObject();
-            memories.put("version", Memory.VERSION);
-            memories.put("memories", new JSONArray());
-            saveMemories();
+        synchronized (LOCK) {
+            if (!memoriesFile.exists()) {
+                memories = new JSONObject();
+                memories.put("version", Memory.VERSION);
+                memories.put("memories", new JSONArray());
+                saveMemories();
+            }
+            reload();
         }
+    }
+
+    private void reload() throws IOException, JSONException {
+        loaded = memoriesFile.lastModified();
         memories = FileUtils.readJSON(memoriesFile);
     }
 
-    private synchronized void saveMemories() throws IOException {
-        try (FileOutputStream out = new FileOutputStream(memoriesFile)) {
+    /**
+     * Reads the file again if another manager or process changed it.
+     */
+    private void refresh() throws IOException, JSONException {
+        synchronized (LOCK) {
+            if (memoriesFile.lastModified() != loaded) {
+                reload();
+            }
+        }
+    }
+
+    private void saveMemories() throws IOException {
+        // readers never see a partially written file
+        File temp = new File(memoriesFile.getParentFile(), memoriesFile.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
             out.write(memories.toString(2).getBytes(StandardCharsets.UTF_8));
         }
+        Files.move(temp.toPath(), memoriesFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        loaded = memoriesFile.lastModified();
     }
 
     List<Memory> getMemories()
             throws JSONException, ParseException, IOException, SAXException, ParserConfigurationException {
+        refresh();
         List<Memory> result = new Vector<>();
         JSONArray array = memories.getJSONArray("memories");
         for (int i = 0; i < array.length(); i++) {
@@ -67,6 +97,7 @@ public class MemoriesManager {
 
     public Memory getMemory(long id)
             throws JSONException, ParseException, IOException, SAXException, ParserConfigurationException {
+        refresh();
         JSONArray array = memories.getJSONArray("memories");
         for (int i = 0; i < array.length(); i++) {
             JSONObject json = array.getJSONObject(i);
@@ -77,27 +108,81 @@ public class MemoriesManager {
         throw new IOException(Messages.getString("MemoriesManager.0"));
     }
 
-    public void update(Memory memory) throws IOException, JSONException {
-        remove(memory.getId());
-        add(memory);
-    }
-
-    public void remove(long id) throws IOException {
+    /**
+     * Returns the engine of a memory without parsing it, {@link Memory#SQLITE}
+     * for memories that are not listed.
+     */
+    public String getEngine(long id) throws IOException {
+        refresh();
         JSONArray array = memories.getJSONArray("memories");
         for (int i = 0; i < array.length(); i++) {
             JSONObject json = array.getJSONObject(i);
             if (id == json.getLong("id")) {
-                array.remove(i);
-                saveMemories();
-                return;
+                return json.optString("engine", Memory.SQLITE);
             }
         }
-        throw new IOException(Messages.getString("MemoriesManager.0"));
+        return Memory.SQLITE;
+    }
+
+    public void update(Memory memory) throws IOException, JSONException {
+        synchronized (LOCK) {
+            reload();
+            JSONArray array = memories.getJSONArray("memories");
+            for (int i = 0; i < array.length(); i++) {
+                if (memory.getId() == array.getJSONObject(i).getLong("id")) {
+                    array.put(i, memory.toJSON());
+                    saveMemories();
+                    return;
+                }
+            }
+            throw new IOException(Messages.getString("MemoriesManager.0"));
+        }
+    }
+
+    /**
+     * Sets the date of the last change of a memory, keeping the rest of its
+     * entry as stored.
+     */
+    public void setLastUpdate(long id, Date date)
+            throws IOException, JSONException, ParseException, SAXException, ParserConfigurationException {
+        synchronized (LOCK) {
+            reload();
+            JSONArray array = memories.getJSONArray("memories");
+            for (int i = 0; i < array.length(); i++) {
+                if (id == array.getJSONObject(i).getLong("id")) {
+                    Memory memory = new Memory(array.getJSONObject(i));
+                    memory.setLastUpdate(date);
+                    array.put(i, memory.toJSON());
+                    saveMemories();
+                    return;
+                }
+            }
+            throw new IOException(Messages.getString("MemoriesManager.0"));
+        }
+    }
+
+    public void remove(long id) throws IOException {
+        synchronized (LOCK) {
+            reload();
+            JSONArray array = memories.getJSONArray("memories");
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject json = array.getJSONObject(i);
+                if (id == json.getLong("id")) {
+                    array.remove(i);
+                    saveMemories();
+                    return;
+                }
+            }
+            throw new IOException(Messages.getString("MemoriesManager.0"));
+        }
     }
 
     public void add(Memory memory) throws IOException {
-        JSONArray array = memories.getJSONArray("memories");
-        array.put(memory.toJSON());
-        saveMemories();
+        synchronized (LOCK) {
+            reload();
+            JSONArray array = memories.getJSONArray("memories");
+            array.put(memory.toJSON());
+            saveMemories();
+        }
     }
 }
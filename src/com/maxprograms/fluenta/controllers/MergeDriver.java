@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.module.Configuration;
+import java.lang.module.ModuleFinder;
+import java.lang.module.ModuleReference;
+import java.lang.module.ResolvedModule;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.maxprograms.converters.Constants;
+import com.maxprograms.converters.ILogger;
+import com.maxprograms.converters.Merge;
+import com.maxprograms.converters.ditamap.Xliff2DitaMap;
+import com.maxprograms.utils.FileUtils;
+import com.maxprograms.xml.Attribute;
+import com.maxprograms.xml.Document;
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.XMLOutputter;
+
+/**
+ * Rebuilds the files of a translated XLIFF concurrently. The XLIFF is split by
+ * the <code>original</code> attribute of its files into chunks that are merged
+ * in parallel; the map is merged last, after all its topics and shared
+ * resources have been written.
+ * <p>
+ * OpenXLIFF converters keep their state in static fields, so each worker runs
+ * its own copy of them, loaded in a separate module layer or class loader. A
+ * merge loads at most one copy per thread, passes them the logger of the job so
+ * that they log their files and stop when it is cancelled, and releases them
+ * when it ends.
+ */
+public class MergeDriver {
+
+	// below this number of files a single merge is faster than loading copies
+	private static final int MIN_FILES = 16;
+	// chunks per thread, to keep threads busy when topic sizes differ
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private Element root;
+	private String map;
+	private String targetFolder;
+	private String catalog;
+	private boolean acceptUnapproved;
+	private File workFolder;
+	private ConcurrentLinkedQueue<Method> idle;
+	private List<ClassLoader> loaders;
+
+	/**
+	 * @param map the <code>original</code> of the map file, the name of the map
+	 */
+	public MergeDriver(Element root, String map, String targetFolder, String catalog, boolean acceptUnapproved) {
+		this.root = root;
+		this.map = map;
+		this.targetFolder = targetFolder;
+		this.catalog = catalog;
+		this.acceptUnapproved = acceptUnapproved;
+	}
+
+	/**
+	 * Returns true when the document contains the given map and has enough files
+	 * to benefit from a parallel merge with the configured number of threads.
+	 */
+	public static boolean accepts(Element root, String map) throws IOException {
+		if (ResourceGovernor.getInstance().getMaxThreads() < 2) {
+			return false;
+		}
+		List<Element> files = root.getChildren("file");
+		if (files.size() < MIN_FILES) {
+			return false;
+		}
+		for (int i = 0; i < files.size(); i++) {
+			if (map.equals(files.get(i).getAttributeValue("original"))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Merges all files, returning a result in the format used by
+	 * {@link Merge#merge(String, String, String, boolean)}.
+	 */
+	public List<String> merge(File tempFolder, ILogger logger) throws IOException {
+		Map<String, List<Element>> groups = new LinkedHashMap<>();
+		List<Element> files = root.getChildren("file");
+		for (int i = 0; i < files.size(); i++) {
+			Element file = files.get(i);
+			groups.computeIfAbsent(file.getAttributeValue("original"), k -> new Vector<>()).add(file);
+		}
+		List<Element> mapFiles = groups.remove(map);
+		if (mapFiles == null) {
+			throw new IOException(Messages.getString("MergeDriver.0"));
+		}
+
+		ResourceGovernor governor = ResourceGovernor.getInstance();
+		long total = 0l;
+		Map<String, Long> sizes = new Hashtable<>();
+		for (Map.Entry<String, List<Element>> entry : groups.entrySet()) {
+			long size = 0l;
+			for (int i = 0; i < entry.getValue().size(); i++) {
+				size += entry.getValue().get(i).toString().length();
+			}
+			sizes.put(entry.getKey(), size);
+			total += size;
+		}
+		long chunkSize = total / (governor.getMaxThreads() * CHUNKS_PER_THREAD) + 1;
+
+		// paths of single originals are resolved against an existing folder only
+		Files.createDirectories(new File(targetFolder).toPath());
+		workFolder = Files.createTempDirectory(tempFolder.toPath(), "chunks").toFile();
+		idle = new ConcurrentLinkedQueue<>();
+		loaders = new Vector<>();
+		try {
+			List<Callable<Void>> tasks = new Vector<>();
+			List<Long> estimates = new Vector<>();
+			List<List<String>> results = new Vector<>();
+			List<String> originals = new Vector<>();
+			List<Element> chunk = new Vector<>();
+			long size = 0l;
+			for (Map.Entry<String, List<Element>> entry : groups.entrySet()) {
+				originals.add(entry.getKey());
+				chunk.addAll(entry.getValue());
+				size += sizes.get(entry.getKey());
+				if (size >= chunkSize) {
+					addTask(tasks, estimates, results, originals, chunk, governor, logger);
+					originals = new Vector<>();
+					chunk = new Vector<>();
+					size = 0l;
+				}
+			}
+			if (!chunk.isEmpty()) {
+				addTask(tasks, estimates, results, originals, chunk, governor, logger);
+			}
+			governor.run(tasks, estimates, logger);
+			for (int i = 0; i < results.size(); i++) {
+				if (!Constants.SUCCESS.equals(results.get(i).get(0))) {
+					return results.get(i);
+				}
+			}
+			if (logger.isCancelled()) {
+				throw new IOException(Messages.getString("LocalController.12"));
+			}
+			List<String> single = new Vector<>();
+			single.add(map);
+			return mergeChunk(writeChunk(mapFiles, tasks.size()), single, logger);
+		} finally {
+			FileUtils.deleteFolder(workFolder);
+			release();
+		}
+	}
+
+	private void addTask(List<Callable<Void>> tasks, List<Long> estimates, List<List<String>> results,
+			List<String> originals, List<Element> chunk, ResourceGovernor governor, ILogger logger)
+			throws IOException {
+		File xliff = writeChunk(chunk, tasks.size());
+		int index = results.size();
+		results.add(null);
+		estimates.add(governor.estimate(xliff));
+		tasks.add(() -> {
+			if (logger.isCancelled()) {
+				throw new IOException(Messages.getString("LocalController.12"));
+			}
+			results.set(index, mergeChunk(xliff, originals, logger));
+			return null;
+		});
+	}
+
+	private File writeChunk(List<Element> chunk, int index) throws IOException {
+		Element xliff = new Element("xliff");
+		List<Attribute> atts = root.getAttributes();
+		for (int i = 0; i < atts.size(); i++) {
+			xliff.setAttribute(atts.get(i).getName(), atts.get(i).getValue());
+		}
+		for (int i = 0; i < chunk.size(); i++) {
+			xliff.addContent(chunk.get(i));
+		}
+		File file = new File(workFolder, "chunk_" + index + ".xlf");
+		try (FileOutputStream output = new FileOutputStream(file)) {
+			XMLOutputter outputter = new XMLOutputter();
+			outputter.preserveSpace(true);
+			Document doc = new Document(null, "xliff", null, null);
+			doc.setRootElement(xliff);
+			outputter.output(doc, output);
+		}
+		return file;
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<String> mergeChunk(File xliff, List<String> originals, ILogger logger) throws IOException {
+		// Merge writes a document with a single original to the target as a file
+		String target = originals.size() == 1
+				? com.maxprograms.converters.Utils.getAbsolutePath(targetFolder, originals.get(0))
+				: targetFolder;
+		Method merge = idle.poll();
+		try {
+			if (merge == null) {
+				merge = loadMerge(logger);
+			}
+			return (List<String>) merge.invoke(null, xliff.getAbsolutePath(), target, catalog, acceptUnapproved);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			throw new IOException(cause.getMessage(), cause);
+		} catch (ReflectiveOperationException e) {
+			throw new IOException(e.getMessage(), e);
+		} finally {
+			if (merge != null) {
+				idle.add(merge);
+			}
+		}
+	}
+
+	private Method loadMerge(ILogger logger) throws ReflectiveOperationException, IOException {
+		ClassLoader loader;
+		Module module = Merge.class.getModule();
+		if (module.isNamed()) {
+			ModuleLayer layer = module.getLayer();
+			Map<String, ModuleReference> references = new Hashtable<>();
+			Set<ResolvedModule> modules = layer.configuration().modules();
+			for (ResolvedModule resolved : modules) {
+				String name = resolved.name();
+				if (!name.startsWith("java.") && !name.startsWith("jdk.")) {
+					references.put(name, resolved.reference());
+				}
+			}
+			ModuleFinder finder = new ModuleFinder() {
+
+				@Override
+				public Optional<ModuleReference> find(String name) {
+					return Optional.ofNullable(references.get(name));
+				}
+
+				@Override
+				public Set<ModuleReference> findAll() {
+					return new HashSet<>(references.values());
+				}
+			};
+			Configuration configuration = layer.configuration().resolve(finder, ModuleFinder.of(),
+					Set.of(module.getName()));
+			loader = layer.defineModulesWithOneLoader(configuration, ClassLoader.getPlatformClassLoader())
+					.findLoader(module.getName());
+		} else {
+			String[] paths = System.getProperty("java.class.path").split(File.pathSeparator);
+			URL[] urls = new URL[paths.length];
+			for (int i = 0; i < paths.length; i++) {
+				urls[i] = new File(paths[i]).toURI().toURL();
+			}
+			loader = new URLClassLoader(urls, ClassLoader.getPlatformClassLoader());
+		}
+		loaders.add(loader);
+		Class<?> type = Class.forName(ILogger.class.getName(), false, loader);
+		Class.forName(Xliff2DitaMap.class.getName(), true, loader).getMethod("setDataLogger", type).invoke(null,
+				wrap(logger, type));
+		return Class.forName(Merge.class.getName(), true, loader).getMethod("merge", String.class, String.class,
+				String.class, boolean.class);
+	}
+
+	/**
+	 * Returns an implementation of the copy's own <code>ILogger</code> interface
+	 * that forwards its calls to the logger of the job.
+	 */
+	private static Object wrap(ILogger logger, Class<?> type) {
+		return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+			Method target = method.getDeclaringClass() == Object.class ? method
+					: ILogger.class.getMethod(method.getName(), method.getParameterTypes());
+			try {
+				return target.invoke(logger, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		});
+	}
+
+	private void release() throws IOException {
+		idle.clear();
+		for (int i = 0; i < loaders.size(); i++) {
+			// module layers are released when no longer referenced
+			if (loaders.get(i) instanceof Closeable closeable) {
+				closeable.close();
+			}
+		}
+		loaders.clear();
+	}
+}
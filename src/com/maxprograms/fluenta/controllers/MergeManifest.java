@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Vector;
+
+import org.json.JSONObject;
+
+import com.maxprograms.utils.FileUtils;
+
+/**
+ * Keeps the hashes of the files produced by merge in a target folder, so that
+ * files whose content did not change are not rewritten and keep their
+ * modification time.
+ */
+public class MergeManifest {
+
+	private File manifestFile;
+	private File targetFolder;
+	private JSONObject files;
+	private int skipped;
+
+	public MergeManifest(File manifestFile, File targetFolder) throws IOException {
+		this.manifestFile = manifestFile;
+		this.targetFolder = targetFolder;
+		files = new JSONObject();
+		if (manifestFile.exists()) {
+			JSONObject json = FileUtils.readJSON(manifestFile);
+			if (targetFolder.getAbsolutePath().equals(json.optString("folder"))) {
+				files = json.getJSONObject("files");
+			}
+		}
+	}
+
+	/**
+	 * Moves the files of a staging folder into the target folder, skipping those
+	 * that are identical to the output already published, and saves the
+	 * manifest.
+	 *
+	 * @return the number of files written to the target folder
+	 */
+	public int publish(File stagingFolder) throws IOException {
+		List<File> list = new Vector<>();
+		listFiles(stagingFolder, list);
+		int written = 0;
+		skipped = 0;
+		String base = stagingFolder.getAbsolutePath();
+		for (int i = 0; i < list.size(); i++) {
+			File source = list.get(i);
+			String path = source.getAbsolutePath().substring(base.length() + 1).replace('\\', '/');
+			String hash = FileUtils.checksum(source);
+			File target = new File(targetFolder, path);
+			JSONObject entry = files.optJSONObject(path);
+			if (entry != null && hash.equals(entry.getString("hash")) && target.exists()
+					&& target.length() == entry.getLong("size")
+					&& target.lastModified() == entry.getLong("modified")) {
+				skipped++;
+				continue;
+			}
+			FileUtils.moveFile(source, target);
+			entry = new JSONObject();
+			entry.put("hash", hash);
+			entry.put("size", target.length());
+			entry.put("modified", target.lastModified());
+			files.put(path, entry);
+			written++;
+		}
+		save();
+		return written;
+	}
+
+	public int getSkipped() {
+		return skipped;
+	}
+
+	private void save() throws IOException {
+		JSONObject json = new JSONObject();
+		json.put("folder", targetFolder.getAbsolutePath());
+		json.put("files", files);
+		File parent = manifestFile.getParentFile();
+		if (!parent.exists()) {
+			Files.createDirectories(parent.toPath());
+		}
+		File temp = new File(parent, manifestFile.getName() + ".tmp");
+		try (FileOutputStream out = new FileOutputStream(temp)) {
+			out.write(json.toString(2).getBytes(StandardCharsets.UTF_8));
+		}
+		Files.move(temp.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void listFiles(File folder, List<File> list) {
+		File[] children = folder.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (int i = 0; i < children.length; i++) {
+			if (children[i].isDirectory()) {
+				listFiles(children[i], list);
+			} else {
+				list.add(children[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+package com.maxprograms.fluenta.controllers;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.maxprograms.converters.ILogger;
+import com.maxprograms.utils.CancellationToken;
+import com.maxprograms.utils.Preferences;
+
+/**
+ * Runs independent language or topic tasks concurrently, admitting a new task
+ * only while the estimated memory of the running tasks fits in the configured
+ * heap budget.
+ * <p>
+ * Threads and reserved memory are counted for the whole process, so a run
+ * started from a task of another run shares its limits. When no task of a run
+ * can be admitted and none of its tasks is running, the calling thread runs the
+ * next one itself.
+ */
+public class ResourceGovernor {
+
+	// a loaded XLIFF DOM takes several times the size of the file
+	private static final long DOM_FACTOR = 8;
+	// alt-trans candidates and match lists kept per segment during TM lookup
+	private static final long BYTES_PER_SEGMENT = 16 * 1024l;
+	private static final byte[] TRANS_UNIT = "<trans-unit".getBytes(StandardCharsets.UTF_8);
+	// segments are counted in the start of larger files and extrapolated
+	private static final int SAMPLE_SIZE = 1024 * 1024;
+
+	// tasks admitted by all governors of the process, so that nested runs share
+	// one thread and heap budget
+	private static final Object LOCK = new Object();
+	private static int active;
+	private static long reserved;
+	private static ExecutorService executor;
+
+	private MemoryMXBean memoryBean;
+	private long heapBudget;
+	private int maxThreads;
+	private int concurrency;
+
+	public ResourceGovernor(long heapBudget, int maxThreads) {
+		this.heapBudget = heapBudget;
+		this.maxThreads = Math.max(1, maxThreads);
+		memoryBean = ManagementFactory.getMemoryMXBean();
+	}
+
+	public static ResourceGovernor getInstance() throws IOException {
+		Preferences preferences = Preferences.getInstance();
+		long maxHeap = Runtime.getRuntime().maxMemory();
+		long budget = maxHeap / 4 * 3;
+		int threads = Runtime.getRuntime().availableProcessors();
+		try {
+			String value = preferences.get("performance", "heapBudget", "");
+			if (!value.isEmpty()) {
+				budget = Math.min(maxHeap, Long.parseLong(value) * 1024 * 1024);
+			}
+			value = preferences.get("performance", "maxThreads", "");
+			if (!value.isEmpty()) {
+				threads = Integer.parseInt(value);
+			}
+		} catch (NumberFormatException e) {
+			// keep defaults
+		}
+		return new ResourceGovernor(budget, threads);
+	}
+
+	public long estimate(File xliff) throws IOException {
+		if (xliff == null || !xliff.exists()) {
+			return 0l;
+		}
+		return xliff.length() * DOM_FACTOR + countSegments(xliff) * BYTES_PER_SEGMENT;
+	}
+
+	public void run(List<Callable<Void>> tasks, List<Long> estimates, ILogger logger) throws IOException {
+		int started = 0;
+		if (tasks.isEmpty()) {
+			return;
+		}
+		CompletionService<Void> completion = new ExecutorCompletionService<>(getExecutor());
+		List<Future<Void>> running = new Vector<>();
+		CancellationToken failed = new CancellationToken();
+		int next = 0;
+		try {
+			while (next < tasks.size() || !running.isEmpty()) {
+				while (next < tasks.size() && reserve(estimates.get(next))) {
+					running.add(completion.submit(admitted(tasks.get(next), estimates.get(next), failed)));
+					next++;
+				}
+				started = Math.max(started, Math.max(1, running.size()));
+				if (running.isEmpty()) {
+					// nothing fits: the calling thread, already counted by its own caller, runs the task
+					tasks.get(next).call();
+					next++;
+					continue;
+				}
+				Future<Void> done = completion.take();
+				running.remove(done);
+				done.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException ioe) {
+				throw ioe;
+			}
+			throw new IOException(cause.getMessage(), cause);
+		} catch (IOException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e.getMessage(), e);
+		} finally {
+			// tasks that did not start are skipped; running ones may still write to the caller's lists
+			failed.cancel();
+			awaitAll(running);
+		}
+		concurrency = started;
+		if (logger != null) {
+			MessageFormat mf = new MessageFormat(Messages.getString("ResourceGovernor.0"));
+			logger.log(mf.format(new String[] { "" + concurrency, "" + (heapBudget / (1024 * 1024)) }));
+		}
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "ResourceGovernor");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return executor;
+	}
+
+	private static Callable<Void> admitted(Callable<Void> task, long estimate, CancellationToken failed) {
+		return () -> {
+			try {
+				if (!failed.isCancelled()) {
+					task.call();
+				}
+				return null;
+			} finally {
+				release(estimate);
+			}
+		};
+	}
+
+	private static void awaitAll(List<Future<Void>> running) {
+		boolean interrupted = false;
+		for (int i = 0; i < running.size(); i++) {
+			while (true) {
+				try {
+					running.get(i).get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					// the first failure was already reported
+					break;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private boolean reserve(long estimate) {
+		synchronized (LOCK) {
+			if (active >= maxThreads) {
+				return false;
+			}
+			if (active > 0) {
+				long used = memoryBean.getHeapMemoryUsage().getUsed();
+				if (reserved + estimate > heapBudget || used + estimate > heapBudget) {
+					return false;
+				}
+			}
+			active++;
+			reserved += estimate;
+			return true;
+		}
+	}
+
+	private static void release(long estimate) {
+		synchronized (LOCK) {
+			active--;
+			reserved -= estimate;
+		}
+	}
+
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	private static long countSegments(File xliff) throws IOException {
+		long count = 0;
+		int matched = 0;
+		long sampled = 0;
+		try (InputStream in = new BufferedInputStream(new FileInputStream(xliff))) {
+			int b;
+			while (sampled < SAMPLE_SIZE && (b = in.read()) != -1) {
+				sampled++;
+				if (b == TRANS_UNIT[matched]) {
+					matched++;
+					if (matched == TRANS_UNIT.length) {
+						count++;
+						matched = 0;
+					}
+				} else {
+					matched = b == TRANS_UNIT[0] ? 1 : 0;
+				}
+			}
+		}
+		long length = xliff.length();
+		return sampled == 0 || length <= sampled ? count : count * length / sampled;
+	}
+}
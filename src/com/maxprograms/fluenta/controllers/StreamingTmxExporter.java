@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.text.MessageFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.json.JSONException;
+import org.xml.sax.SAXException;
+
+import com.maxprograms.converters.ILogger;
+import com.maxprograms.fluenta.Constants;
+import com.maxprograms.languages.LanguageUtils;
+import com.maxprograms.swordfish.tm.ITmEngine;
+import com.maxprograms.swordfish.tm.TMUtils;
+import com.maxprograms.utils.Preferences;
+import com.maxprograms.xml.CatalogBuilder;
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.SAXBuilder;
+import com.maxprograms.xml.XMLUtils;
+
+/**
+ * Writes the units of a memory to a TMX file, optionally compressed with gzip,
+ * keeping only the selected languages, the units changed since a date and the
+ * units of one project.
+ * <p>
+ * Engines that implement {@link Source} pass their units one at a time; other
+ * engines export the whole memory to a temporary file that is read one
+ * <code>&lt;tu&gt;</code> at a time. Either way only the unit being written is
+ * held in memory.
+ * <p>
+ * The date of a unit is the latest <code>changedate</code> or
+ * <code>creationdate</code> of the unit and its variants. Units without dates
+ * are always exported, as their age is unknown.
+ */
+public class StreamingTmxExporter {
+
+	private static final int PROGRESS_INTERVAL = 10000;
+
+	/**
+	 * Engine that can read its units one by one.
+	 */
+	public interface Source {
+
+		/**
+		 * Passes to the store each unit that has a segment in one of the given
+		 * languages.
+		 */
+		void readUnits(Set<String> languages, TmxUnitHandler.Store store)
+				throws IOException, SQLException, URISyntaxException;
+	}
+
+	private ITmEngine engine;
+	private ILogger logger;
+	private Set<String> languages;
+	private String since;
+	private String project;
+	private boolean compressed;
+
+	public StreamingTmxExporter(ITmEngine engine, ILogger logger) {
+		this.engine = engine;
+		this.logger = logger;
+	}
+
+	/**
+	 * Exports only the given languages. Units left with less than two variants
+	 * are skipped, unless a single language is selected.
+	 */
+	public void setLanguages(Set<String> languages) throws IOException {
+		this.languages = new HashSet<>();
+		Iterator<String> it = languages.iterator();
+		while (it.hasNext()) {
+			this.languages.add(LanguageUtils.normalizeCode(it.next()));
+		}
+	}
+
+	public void setChangedSince(Date date) {
+		SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		since = format.format(date);
+	}
+
+	public void setProject(String project) {
+		this.project = project;
+	}
+
+	public void setCompressed(boolean compressed) {
+		this.compressed = compressed;
+	}
+
+	/**
+	 * Writes the selected units to the given file and returns their number.
+	 */
+	public int export(File tmxFile, String srcLang) throws IOException, SQLException, SAXException,
+			ParserConfigurationException, URISyntaxException, JSONException {
+		if (languages == null) {
+			setLanguages(engine.getAllLanguages());
+		}
+		MessageFormat stage = new MessageFormat(Messages.getString("StreamingTmxExporter.0"));
+		logger.setStage(stage.format(new String[] { tmxFile.getName() }));
+		long start = System.currentTimeMillis();
+		int minimum = Math.min(2, languages.size());
+		MessageFormat progress = new MessageFormat(Messages.getString("StreamingTmxExporter.1"));
+		int[] count = new int[1];
+		try (OutputStream out = open(tmxFile)) {
+			writeHeader(out, srcLang);
+			TmxUnitHandler.Store writer = new TmxUnitHandler.Store() {
+
+				@Override
+				public void storeTu(Element tu) throws IOException {
+					if (logger.isCancelled()) {
+						throw new IOException(Messages.getString("LocalController.12"));
+					}
+					if (select(tu) && tu.getChildren("tuv").size() >= minimum) {
+						writeString(out, tu.toString() + "\n");
+						count[0]++;
+						if (count[0] % PROGRESS_INTERVAL == 0) {
+							logger.log(progress.format(new String[] { "" + count[0] }));
+						}
+					}
+				}
+
+				@Override
+				public void commit() {
+					// nothing to commit
+				}
+			};
+			readUnits(writer, srcLang);
+			writeString(out, "</body>\n");
+			writeString(out, "</tmx>");
+		}
+		MessageFormat mf = new MessageFormat(Messages.getString("StreamingTmxExporter.2"));
+		logger.log(mf.format(new String[] { "" + count[0], "" + (System.currentTimeMillis() - start) / 1000 }));
+		return count[0];
+	}
+
+	/**
+	 * Passes each unit with a segment in the selected languages to the store, one
+	 * at a time and without filtering.
+	 */
+	public void readUnits(TmxUnitHandler.Store store, String srcLang) throws IOException, SQLException,
+			SAXException, ParserConfigurationException, URISyntaxException, JSONException {
+		if (languages == null) {
+			setLanguages(engine.getAllLanguages());
+		}
+		if (engine instanceof Source source) {
+			source.readUnits(languages, store);
+		} else if (!languages.isEmpty()) {
+			read(store, srcLang);
+		}
+	}
+
+	private OutputStream open(File tmxFile) throws IOException {
+		OutputStream out = new FileOutputStream(tmxFile);
+		if (compressed) {
+			out = new GZIPOutputStream(out, 65536);
+		}
+		return new BufferedOutputStream(out, 65536);
+	}
+
+	private void read(TmxUnitHandler.Store writer, String srcLang) throws IOException, SQLException, SAXException,
+			ParserConfigurationException, URISyntaxException, JSONException {
+		File temp = File.createTempFile("export", ".tmx");
+		try {
+			engine.exportMemory(temp.getAbsolutePath(), languages, srcLang);
+			SAXBuilder builder = new SAXBuilder();
+			builder.setEntityResolver(CatalogBuilder.getCatalog(Preferences.getInstance().getCatalogFile()));
+			builder.setContentHandler(new TmxUnitHandler(writer, Integer.MAX_VALUE));
+			builder.build(temp);
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+
+	private boolean select(Element tu) throws IOException {
+		if (project != null && !project.equals(getProp(tu, "project"))) {
+			return false;
+		}
+		List<Element> tuvs = tu.getChildren("tuv");
+		for (int i = 0; i < tuvs.size(); i++) {
+			Element tuv = tuvs.get(i);
+			if (!languages.contains(LanguageUtils.normalizeCode(tuv.getAttributeValue("xml:lang")))) {
+				tu.removeChild(tuv);
+			}
+		}
+		String date = getDate(tu);
+		return since == null || date.isEmpty() || date.compareTo(since) >= 0;
+	}
+
+	/**
+	 * Returns the latest <code>changedate</code> or <code>creationdate</code> of
+	 * a unit and its variants, or an empty string if it has none.
+	 */
+	static String getDate(Element tu) {
+		String date = getLatest(tu);
+		List<Element> tuvs = tu.getChildren("tuv");
+		for (int i = 0; i < tuvs.size(); i++) {
+			String tuvDate = getLatest(tuvs.get(i));
+			if (tuvDate.compareTo(date) > 0) {
+				date = tuvDate;
+			}
+		}
+		return date;
+	}
+
+	private static String getLatest(Element e) {
+		// TMX dates sort as text
+		String changed = e.getAttributeValue("changedate");
+		String created = e.getAttributeValue("creationdate");
+		return changed.compareTo(created) > 0 ? changed : created;
+	}
+
+	private static String getProp(Element tu, String type) {
+		List<Element> props = tu.getChildren("prop");
+		for (int i = 0; i < props.size(); i++) {
+			if (props.get(i).getAttributeValue("type").equals(type)) {
+				return props.get(i).getText();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Writes the TMX declaration, header and the start of the body.
+	 */
+	static void writeHeader(OutputStream out, String srcLang) throws IOException {
+		writeString(out, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		writeString(out,
+				"<!DOCTYPE tmx PUBLIC \"-//LISA OSCAR:1998//DTD for Translation Memory eXchange//EN\" \"tmx14.dtd\" >\n");
+		writeString(out, "<tmx version=\"1.4\">\n");
+		writeString(out, "<header \n      creationtool=\"" + Constants.NAME + "\" \n      creationtoolversion=\""
+				+ Constants.VERSION + "\" \n      srclang=\"" + XMLUtils.cleanText(srcLang)
+				+ "\" \n      adminlang=\"en\"  \n      datatype=\"xml\" \n      o-tmf=\"unknown\" \n      segtype=\"block\" \n      creationdate=\""
+				+ TMUtils.creationDate() + "\"\n>\n</header>\n");
+		writeString(out, "<body>\n");
+	}
+
+	static void writeString(OutputStream out, String string) throws IOException {
+		out.write(string.getBytes(StandardCharsets.UTF_8));
+	}
+}
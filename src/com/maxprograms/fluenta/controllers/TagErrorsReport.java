@@ -13,13 +13,18 @@
 package com.maxprograms.fluenta.controllers;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.MessageFormat;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
@@ -45,34 +50,93 @@ public class TagErrorsReport {
 	static final String MATHGT = "\u200B\u203A";
 	static final String GAMP = "\u200B\u203A";
 
-	private static FileOutputStream out;
+	// trans-units checked before their rows are written
+	private static final int WINDOW = 4096;
 
-	private TagErrorsReport() {
-		// do not instantiate this class
+	private static String css;
+
+	private Writer out;
+	private int maxErrors;
+	private int errorCount;
+
+	/**
+	 * @param maxErrors number of rows after which the report stops, or 0 to
+	 *                  report all errors
+	 */
+	public TagErrorsReport(int maxErrors) {
+		this.maxErrors = maxErrors;
 	}
 
 	public static String run(String file)
 			throws IOException, SAXException, ParserConfigurationException, URISyntaxException {
-
-		Element source;
-		Element target;
-		List<String> srclist;
-		List<String> trglist;
-		List<Element> segments = new Vector<>();
-
 		Document doc = loadXliff(file);
 		Element root = doc.getRootElement();
 		removeAltTrans(root);
+		return run(root, file);
+	}
+
+	public static String run(Element root, String file) throws IOException {
+		return new TagErrorsReport(getDefaultMaxErrors()).write(root, file);
+	}
+
+	/**
+	 * Writes the report of segments already checked with {@link TagValidator},
+	 * without validating them again.
+	 */
+	public static String run(List<Element> segments, List<List<String>> segmentErrors, String file)
+			throws IOException {
+		return new TagErrorsReport(getDefaultMaxErrors()).write(segments, segmentErrors, file);
+	}
+
+	public static int getDefaultMaxErrors() throws IOException {
+		try {
+			return Integer.parseInt(Preferences.getInstance().get("tagErrors", "maxErrors", "0"));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	public String write(Element root, String file) throws IOException {
+		List<Element> segments = new Vector<>();
 
 		createList(root, segments);
 
+		return write(segments, null, file);
+	}
+
+	/**
+	 * Writes the report of the given segments. When <code>segmentErrors</code>
+	 * is null the segments are validated here, a window at a time.
+	 */
+	public String write(List<Element> segments, List<List<String>> segmentErrors, String file)
+			throws IOException {
 		File f = new File(file);
 		String outName = f.getName();
 		if (outName.indexOf('.') != -1) {
 			outName = outName.substring(0, outName.lastIndexOf('.')) + "_error.html";
 		}
-		File output = new File(f.getParentFile(), outName);
-		out = new FileOutputStream(output);
+		File folder = f.getAbsoluteFile().getParentFile();
+		if (!Files.isWritable(folder.toPath())) {
+			// the XLIFF may come from a read-only location
+			folder = new File(System.getProperty("java.io.tmpdir"));
+		}
+		File output = new File(folder, outName);
+		errorCount = 0;
+		try (Writer writer = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8))) {
+			out = writer;
+			writeReport(f, segments, segmentErrors);
+		} finally {
+			out = null;
+		}
+		return output.getAbsolutePath();
+	}
+
+	public int getErrorCount() {
+		return errorCount;
+	}
+
+	private void writeReport(File f, List<Element> segments, List<List<String>> checked) throws IOException {
 		writeStr("<html>\n");
 		writeStr("  <head>\n");
 		writeStr("    <meta http-equiv=\"Content-Type\" content=\"text/html; charset=utf-8\" />\n");
@@ -97,71 +161,40 @@ public class TagErrorsReport {
 				+ "</th>\n");
 		writeStr("      </tr>\n");
 
+		TagValidator validator = new TagValidator();
 		int size = segments.size();
-		for (int i = 0; i < size; i++) {
-
-			Element e = segments.get(i);
-			source = e.getChild("source");
-			target = e.getChild("target");
-			if (target == null) {
-				continue;
-			}
-			srclist = buildTagList(source);
-			trglist = buildTagList(target);
-
-			/* check empty target */
-			if (!trglist.isEmpty()) {
-				int tLength = trglist.size();
-				int j;
-				if (tLength > srclist.size()) {
-					writeSegment(i + 1, source, target,
-							com.maxprograms.fluenta.controllers.Messages.getString("TagErrorsReport.4"));
-				} else if (tLength < srclist.size()) {
-					writeSegment(i + 1, source, target,
-							com.maxprograms.fluenta.controllers.Messages.getString("TagErrorsReport.5"));
-				} else {
-					for (j = 0; j < srclist.size(); j++) {
-						String es = srclist.get(j);
-						boolean paired = false;
-						for (int k = 0; k < trglist.size(); k++) {
-							String et = trglist.get(k);
-							if (es.equals(et)) {
-								paired = true;
-								trglist.remove(k);
-								break;
-							}
-						}
-						if (!paired) {
-							writeSegment(i + 1, source, target,
-									com.maxprograms.fluenta.controllers.Messages.getString("TagErrorsReport.6"));
-						}
+		boolean truncated = false;
+		for (int start = 0; start < size && !truncated; start += WINDOW) {
+			int end = Math.min(size, start + WINDOW);
+			List<List<String>> segmentErrors = checked != null ? checked.subList(start, end)
+					: validator.checkAll(segments.subList(start, end), false, null);
+			for (int i = start; i < end && !truncated; i++) {
+				Element e = segments.get(i);
+				List<String> errors = segmentErrors.get(i - start);
+				for (int j = 0; j < errors.size(); j++) {
+					if (maxErrors > 0 && errorCount >= maxErrors) {
+						truncated = true;
+						break;
 					}
-					trglist = buildTagList(target);
-					for (j = 0; j < srclist.size(); j++) {
-						String es = srclist.get(j);
-						String et = trglist.get(j);
-						if (!es.equals(et)) {
-							writeSegment(i + 1, source, target,
-									com.maxprograms.fluenta.controllers.Messages.getString("TagErrorsReport.7"));
-						}
-					}
-				}
-			} else {
-				// all tags are missing
-				if (!srclist.isEmpty()) {
-					writeSegment(i + 1, source, target,
-							com.maxprograms.fluenta.controllers.Messages.getString("TagErrorsReport.5"));
+					writeSegment(i + 1, e.getChild("source"), e.getChild("target"), getDescription(errors.get(j)));
+					errorCount++;
 				}
 			}
 		}
 		writeStr("    </table>\n");
+		if (truncated) {
+			MessageFormat mf = new MessageFormat(
+					com.maxprograms.fluenta.controllers.Messages.getString("TagErrorsReport.10"));
+			writeStr("    <p>" + XMLUtils.cleanText(mf.format(new String[] { "" + maxErrors })) + "</p>\n");
+		}
 		writeStr("  </body>\n");
 		writeStr("</html>\n");
-		out.close();
-		return output.getAbsolutePath();
 	}
 
-	private static String readCss() throws IOException {
+	private static synchronized String readCss() throws IOException {
+		if (css != null) {
+			return css;
+		}
 		StringBuilder sb = new StringBuilder();
 		try (InputStream is = TagErrorsReport.class.getResourceAsStream("tagErrors.css")) {
 			try (InputStreamReader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
@@ -176,10 +209,11 @@ public class TagErrorsReport {
 				}
 			}
 		}
-		return sb.toString();
+		css = sb.toString();
+		return css;
 	}
 
-	private static void writeSegment(int id, Element source, Element target, String description) throws IOException {
+	private void writeSegment(int id, Element source, Element target, String description) throws IOException {
 		writeStr("      <tr>\n");
 		writeStr("        <td class='center'>" + id + "</td>\n");
 		writeStr("        <td class='left'>" + tag(source) + "</td>\n");
@@ -302,8 +336,8 @@ public class TagErrorsReport {
 		return string;
 	}
 
-	private static void writeStr(String string) throws IOException {
-		out.write(string.getBytes(StandardCharsets.UTF_8));
+	private void writeStr(String string) throws IOException {
+		out.write(string);
 	}
 
 	private static Document loadXliff(String fileName)
@@ -400,59 +434,17 @@ public class TagErrorsReport {
 		}
 	}
 
-	public static List<String> buildTagList(Element e) {
-		List<String> result = new Vector<>();
-		List<XMLNode> content = e.getContent();
-		Iterator<XMLNode> i = content.iterator();
-		while (i.hasNext()) {
-			XMLNode o = i.next();
-			if (o.getNodeType() == XMLNode.ELEMENT_NODE) {
-				Element el = (Element) o;
-				if (el.getName().equals("ph") || el.getName().equals("bpt") || el.getName().equals("ept")
-						|| el.getName().equals("it")) {
-					if (!el.getChildren().isEmpty()) {
-						String open = "<" + el.getName() + " ";
-						List<Attribute> att = el.getAttributes();
-						for (int j = 0; j < att.size(); j++) {
-							Attribute a = att.get(j);
-							open = open + a.getName() + "=\"" + a.getValue().replace("\"", "&quot;") + "\" ";
-						}
-						result.add(open.substring(0, open.length() - 1) + ">");
-						List<XMLNode> list = el.getContent();
-						for (int j = 0; j < list.size(); j++) {
-							XMLNode n = list.get(j);
-							if (n.getNodeType() == XMLNode.ELEMENT_NODE) {
-								result.addAll(buildTagList((Element) n));
-							}
-						}
-						result.add("</" + el.getName() + ">");
-					} else {
-						result.add(el.toString());
-					}
-				} else if (el.getName().equals("mrk") || el.getName().equals("g") || el.getName().equals("sub")) {
-					String open = "<" + el.getName() + " ";
-					List<Attribute> att = el.getAttributes();
-					for (int j = 0; j < att.size(); j++) {
-						Attribute a = att.get(j);
-						open = open + a.getName() + "=\"" + a.getValue().replace("\"", "&quot;") + "\" ";
-					}
-					result.add(open.substring(0, open.length() - 1) + ">");
-					List<XMLNode> list = el.getContent();
-					for (int j = 0; j < list.size(); j++) {
-						XMLNode n = list.get(j);
-						if (n.getNodeType() == XMLNode.ELEMENT_NODE) {
-							result.addAll(buildTagList((Element) n));
-						}
-					}
-					result.add("</" + el.getName() + ">");
-				} else if (el.getName().equals("x") || el.getName().equals("bx") || el.getName().equals("ex")) {
-					result.add(el.toString());
-				} else {
-					// foreign element?
-					result.add(el.toString());
-				}
-			}
+	private static String getDescription(String error) {
+		switch (error) {
+			case TagValidator.EXTRA:
+				return com.maxprograms.fluenta.controllers.Messages.getString("TagErrorsReport.4");
+			case TagValidator.UNPAIRED:
+				return com.maxprograms.fluenta.controllers.Messages.getString("TagErrorsReport.6");
+			case TagValidator.REORDERED:
+				return com.maxprograms.fluenta.controllers.Messages.getString("TagErrorsReport.7");
+			default:
+				// missing tags or empty target
+				return com.maxprograms.fluenta.controllers.Messages.getString("TagErrorsReport.5");
 		}
-		return result;
 	}
 }
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONObject;
+
+import com.maxprograms.converters.ILogger;
+import com.maxprograms.xml.Attribute;
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.XMLNode;
+
+/**
+ * Compares the inline tags of source and target in a trans-unit. Each tag is
+ * reduced to an interned integer token so that count, pairing and order are
+ * checked in linear time.
+ */
+public class TagValidator {
+
+	public static final String EXTRA = "extra";
+	public static final String MISSING = "missing";
+	public static final String UNPAIRED = "unpaired";
+	public static final String REORDERED = "reordered";
+	public static final String EMPTY = "empty";
+
+	// smallest number of trans-units worth handing to a separate thread
+	private static final int MIN_CHUNK = 256;
+
+	private Map<String, Integer> tokens;
+	private AtomicInteger nextToken;
+
+	public TagValidator() {
+		tokens = new ConcurrentHashMap<>();
+		nextToken = new AtomicInteger();
+	}
+
+	/**
+	 * Returns the errors found in a trans-unit, one entry per error, in the order
+	 * they are detected. The list is empty when the tags match or the unit has no
+	 * target.
+	 */
+	public List<String> check(Element unit) {
+		List<String> errors = new Vector<>();
+		Element target = unit.getChild("target");
+		if (target == null) {
+			return errors;
+		}
+		int[] srcTags = tokenize(unit.getChild("source"));
+		int[] tgtTags = tokenize(target);
+		if (tgtTags.length == 0) {
+			if (srcTags.length != 0) {
+				errors.add(EMPTY);
+			}
+			return errors;
+		}
+		if (tgtTags.length > srcTags.length) {
+			errors.add(EXTRA);
+			return errors;
+		}
+		if (tgtTags.length < srcTags.length) {
+			errors.add(MISSING);
+			return errors;
+		}
+		Map<Integer, Integer> available = new HashMap<>();
+		for (int i = 0; i < tgtTags.length; i++) {
+			available.merge(tgtTags[i], 1, Integer::sum);
+		}
+		for (int i = 0; i < srcTags.length; i++) {
+			Integer count = available.get(srcTags[i]);
+			if (count == null || count == 0) {
+				errors.add(UNPAIRED);
+			} else {
+				available.put(srcTags[i], count - 1);
+			}
+		}
+		for (int i = 0; i < srcTags.length; i++) {
+			if (srcTags[i] != tgtTags[i]) {
+				errors.add(REORDERED);
+			}
+		}
+		return errors;
+	}
+
+	/**
+	 * Checks a list of trans-units in parallel chunks. The result has one entry
+	 * per trans-unit, in document order; units skipped because they are not
+	 * approved get an empty list.
+	 */
+	public List<List<String>> checkAll(List<Element> segments, boolean approvedOnly, ILogger logger)
+			throws IOException {
+		Vector<List<String>> result = new Vector<>();
+		result.setSize(segments.size());
+		ResourceGovernor governor = ResourceGovernor.getInstance();
+		int chunk = Math.max(MIN_CHUNK, segments.size() / (governor.getMaxThreads() * 4) + 1);
+		List<Callable<Void>> tasks = new Vector<>();
+		List<Long> estimates = new Vector<>();
+		for (int start = 0; start < segments.size(); start += chunk) {
+			int from = start;
+			int to = Math.min(segments.size(), start + chunk);
+			tasks.add(() -> {
+				for (int i = from; i < to; i++) {
+					if (logger != null && logger.isCancelled()) {
+						throw new IOException(Messages.getString("LocalController.12"));
+					}
+					Element unit = segments.get(i);
+					if (approvedOnly && "no".equals(unit.getAttributeValue("approved", "no"))) {
+						result.set(i, new Vector<>());
+					} else {
+						result.set(i, check(unit));
+					}
+				}
+				return null;
+			});
+			// segments are already in memory
+			estimates.add(0l);
+		}
+		governor.run(tasks, estimates, null);
+		return result;
+	}
+
+	/**
+	 * Describes an error for automated processing. Empty targets are reported as
+	 * missing tags.
+	 */
+	public static JSONObject toJSON(int segment, Element unit, String original, String error) {
+		JSONObject json = new JSONObject();
+		json.put("segment", segment);
+		json.put("id", unit.getAttributeValue("id"));
+		json.put("file", original);
+		json.put("kind", EMPTY.equals(error) ? MISSING : error);
+		return json;
+	}
+
+	public int[] tokenize(Element e) {
+		List<String> tags = new Vector<>();
+		collectTags(e, tags);
+		int[] result = new int[tags.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = tokens.computeIfAbsent(tags.get(i), k -> nextToken.getAndIncrement());
+		}
+		return result;
+	}
+
+	private static void collectTags(Element e, List<String> result) {
+		List<XMLNode> content = e.getContent();
+		for (int i = 0; i < content.size(); i++) {
+			XMLNode o = content.get(i);
+			if (o.getNodeType() != XMLNode.ELEMENT_NODE) {
+				continue;
+			}
+			Element el = (Element) o;
+			String name = el.getName();
+			boolean container = name.equals("mrk") || name.equals("g") || name.equals("sub");
+			boolean nativeCode = name.equals("ph") || name.equals("bpt") || name.equals("ept") || name.equals("it");
+			if (container || (nativeCode && !el.getChildren().isEmpty())) {
+				result.add(openTag(el));
+				List<XMLNode> list = el.getContent();
+				for (int j = 0; j < list.size(); j++) {
+					XMLNode n = list.get(j);
+					if (n.getNodeType() == XMLNode.ELEMENT_NODE) {
+						collectTags((Element) n, result);
+					}
+				}
+				result.add("</" + name + ">");
+			} else {
+				// placeholders, empty native codes and foreign elements
+				result.add(el.toString());
+			}
+		}
+	}
+
+	private static String openTag(Element el) {
+		StringBuilder sb = new StringBuilder();
+		sb.append('<');
+		sb.append(el.getName());
+		List<Attribute> att = el.getAttributes();
+		for (int j = 0; j < att.size(); j++) {
+			Attribute a = att.get(j);
+			sb.append(' ');
+			sb.append(a.getName());
+			sb.append("=\"");
+			sb.append(a.getValue().replace("\"", "&quot;"));
+			sb.append('"');
+		}
+		sb.append('>');
+		return sb.toString();
+	}
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.json.JSONException;
+import org.xml.sax.SAXException;
+
+import com.maxprograms.converters.ILogger;
+import com.maxprograms.languages.LanguageUtils;
+import com.maxprograms.swordfish.tm.ITmEngine;
+import com.maxprograms.utils.FileUtils;
+import com.maxprograms.xml.Element;
+
+/**
+ * Writes the units of a memory to a TMX file without duplicates, for
+ * {@link LocalController#compactMemory} to load into a new database.
+ * <p>
+ * Units are grouped by a hash of their content and only the newest unit of
+ * each group is kept, by the date returned by {@link StreamingTmxExporter}; between
+ * units with the same date, the last one read wins. With the
+ * {@value #IDENTICAL} policy a group holds units with the same segments in the
+ * same languages. With the {@value #NEWEST} policy it holds units with the
+ * same source segment and the same languages, so that older translations of a
+ * source segment are dropped as well.
+ * <p>
+ * The memory is read twice, one unit at a time; only the hash, date and id of
+ * the unit kept for each group are held in memory.
+ */
+public class TmCompactor {
+
+	public static final String IDENTICAL = "identical";
+	public static final String NEWEST = "newest";
+
+	private ITmEngine engine;
+	private String srcLang;
+	private String policy;
+	private ILogger logger;
+	private int units;
+
+	public TmCompactor(ITmEngine engine, String srcLang, String policy, ILogger logger) throws IOException {
+		this.engine = engine;
+		this.srcLang = LanguageUtils.normalizeCode(srcLang);
+		this.policy = policy;
+		this.logger = logger;
+	}
+
+	/**
+	 * Writes the units to keep to the given file and returns their number.
+	 */
+	public int compact(File tmxFile) throws IOException, SQLException, SAXException, ParserConfigurationException,
+			URISyntaxException, JSONException {
+		Map<String, String> newest = new HashMap<>();
+		units = 0;
+		new StreamingTmxExporter(engine, logger).readUnits(new TmxUnitHandler.Store() {
+
+			@Override
+			public void storeTu(Element tu) throws IOException {
+				checkCancelled();
+				String candidate = StreamingTmxExporter.getDate(tu) + ' ' + tu.getAttributeValue("tuid");
+				newest.merge(getKey(tu), candidate, (a, b) -> getDate(b).compareTo(getDate(a)) >= 0 ? b : a);
+				units++;
+			}
+
+			@Override
+			public void commit() {
+				// nothing to commit
+			}
+		}, srcLang);
+		MessageFormat mf = new MessageFormat(Messages.getString("TmCompactor.0"));
+		logger.log(mf.format(new String[] { "" + units, "" + newest.size() }));
+		int[] kept = new int[1];
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmxFile), 65536)) {
+			StreamingTmxExporter.writeHeader(out, srcLang);
+			new StreamingTmxExporter(engine, logger).readUnits(new TmxUnitHandler.Store() {
+
+				@Override
+				public void storeTu(Element tu) throws IOException {
+					checkCancelled();
+					String best = newest.get(getKey(tu));
+					if (best != null && best.substring(best.indexOf(' ') + 1).equals(tu.getAttributeValue("tuid"))) {
+						StreamingTmxExporter.writeString(out, tu.toString() + "\n");
+						kept[0]++;
+					}
+				}
+
+				@Override
+				public void commit() {
+					// nothing to commit
+				}
+			}, srcLang);
+			StreamingTmxExporter.writeString(out, "</body>\n");
+			StreamingTmxExporter.writeString(out, "</tmx>");
+		}
+		return kept[0];
+	}
+
+	/**
+	 * Returns the number of units read from the memory.
+	 */
+	public int getUnits() {
+		return units;
+	}
+
+	private static String getDate(String candidate) {
+		return candidate.substring(0, candidate.indexOf(' '));
+	}
+
+	private void checkCancelled() throws IOException {
+		if (logger.isCancelled()) {
+			throw new IOException(Messages.getString("LocalController.12"));
+		}
+	}
+
+	private String getKey(Element tu) throws IOException {
+		List<Element> tuvs = tu.getChildren("tuv");
+		String[] langs = new String[tuvs.size()];
+		String[] segments = new String[tuvs.size()];
+		String source = null;
+		for (int i = 0; i < tuvs.size(); i++) {
+			Element tuv = tuvs.get(i);
+			langs[i] = LanguageUtils.normalizeCode(tuv.getAttributeValue("xml:lang"));
+			Element seg = tuv.getChild("seg");
+			segments[i] = langs[i] + '\u0000' + (seg != null ? seg.toString() : "");
+			if (srcLang.equals(langs[i])) {
+				source = segments[i];
+			}
+		}
+		Arrays.sort(langs);
+		Arrays.sort(segments);
+		StringBuilder content = new StringBuilder();
+		if (NEWEST.equals(policy) && source != null) {
+			content.append(source);
+			for (int i = 0; i < langs.length; i++) {
+				content.append('\u0000').append(langs[i]);
+			}
+		} else {
+			for (int i = 0; i < segments.length; i++) {
+				content.append(segments[i]).append('\u0000');
+			}
+		}
+		// half a hash is enough to tell units apart and keeps the table small
+		return FileUtils.checksum(content.toString().getBytes(StandardCharsets.UTF_8)).substring(0, 32);
+	}
+}
@@ -0,0 +1,748 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.Vector;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.xml.sax.SAXException;
+
+import com.maxprograms.languages.LanguageUtils;
+import com.maxprograms.swordfish.tm.ITmEngine;
+import com.maxprograms.swordfish.tm.Match;
+import com.maxprograms.swordfish.tm.TMUtils;
+import com.maxprograms.utils.Preferences;
+import com.maxprograms.xml.CatalogBuilder;
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.SAXBuilder;
+
+/**
+ * Read-only copy of a memory used by XLIFF generation, stored in
+ * <code>memories/&lt;id&gt;/snapshot</code> and read with
+ * {@link FileChannel#map}, so that processes generating at the same time share
+ * one copy through the page cache instead of opening the database.
+ * <p>
+ * For each language the file holds the segments sorted by text, a hash table
+ * of the texts for exact lookups and the trigram posting lists searched with
+ * {@link TrigramSearch}. Units stored through {@link IndexedTmEngine} or
+ * {@link MapDbEngine} after a snapshot is written are listed in a change log;
+ * the next {@link #open(long)} writes a new snapshot that reads only those
+ * units from the database.
+ * Snapshots are never modified: each one is written to a new file, so readers
+ * keep the file they mapped.
+ */
+public class TmSnapshot implements ITmEngine {
+
+	private static final int MAGIC = 0x464c5453;
+	private static final int VERSION = 1;
+	private static final int HEADER = 32;
+	private static final int ENTRY = 16;
+	private static final long CHUNK = 1L << 30;
+	private static final String CHANGES = "changes";
+	private static final Object LOCK = new Object();
+
+	private String name;
+	private String version;
+	private MappedByteBuffer[] chunks;
+	private int unitCount;
+	private long unitsIndex;
+	private Map<String, Long> languages;
+
+	private TmSnapshot(String name, File file) throws IOException {
+		this.name = name;
+		version = file.getName();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			chunks = new MappedByteBuffer[(int) ((size + CHUNK - 1) / CHUNK)];
+			for (int i = 0; i < chunks.length; i++) {
+				long start = i * CHUNK;
+				chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK, size - start));
+			}
+		}
+		if (chunks.length == 0 || getInt(0) != MAGIC || getInt(4) != VERSION) {
+			throw new IOException(Messages.getString("TmSnapshot.0"));
+		}
+		unitCount = getInt(8);
+		int langCount = getInt(12);
+		unitsIndex = getLong(16);
+		long position = getLong(24);
+		languages = new Hashtable<>();
+		for (int i = 0; i < langCount; i++) {
+			int length = getInt(position);
+			String lang = new String(getBytes(position + 4, length), StandardCharsets.UTF_8);
+			languages.put(lang, getLong(position + 4 + length));
+			position += 12 + length;
+		}
+	}
+
+	/**
+	 * Returns the current snapshot of a memory, writing it first if the memory
+	 * changed since the last one.
+	 */
+	public static TmSnapshot open(long memoryId) throws IOException, SQLException, SAXException,
+			ParserConfigurationException, URISyntaxException, JSONException {
+		File folder = getFolder(new File(Preferences.getInstance().getMemoriesFolder(), "" + memoryId));
+		synchronized (LOCK) {
+			if (!folder.exists()) {
+				Files.createDirectories(folder.toPath());
+			}
+			try (FileChannel channel = FileChannel.open(new File(folder, "lock").toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+				// released when the channel is closed
+				channel.lock();
+				File current = getCurrent(folder);
+				File changes = new File(folder, CHANGES);
+				if (current == null || changes.exists()) {
+					Set<String> changed = new HashSet<>();
+					if (current != null) {
+						changed.addAll(Files.readAllLines(changes.toPath(), StandardCharsets.UTF_8));
+					}
+					current = write(memoryId, folder, current, changed);
+					Files.deleteIfExists(changes.toPath());
+				}
+				deleteOlder(folder, current);
+				return new TmSnapshot("" + memoryId, current);
+			}
+		}
+	}
+
+	/**
+	 * Adds the ids of stored or removed units to the change log of a memory that
+	 * has a snapshot.
+	 */
+	static void recordChanges(File memoryFolder, Set<String> tuids) throws IOException {
+		File folder = getFolder(memoryFolder);
+		if (tuids.isEmpty() || !folder.exists()) {
+			return;
+		}
+		StringBuilder sb = new StringBuilder();
+		Iterator<String> it = tuids.iterator();
+		while (it.hasNext()) {
+			sb.append(it.next()).append('\n');
+		}
+		synchronized (LOCK) {
+			try (FileChannel channel = FileChannel.open(new File(folder, "lock").toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+				// released when the channel is closed
+				channel.lock();
+				Files.writeString(new File(folder, CHANGES).toPath(), sb.toString(), StandardCharsets.UTF_8,
+						StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			}
+		}
+	}
+
+	private static File getFolder(File memoryFolder) {
+		return new File(memoryFolder, "snapshot");
+	}
+
+	private static File getCurrent(File folder) {
+		File[] files = folder.listFiles((dir, name) -> name.endsWith(".tms"));
+		if (files == null || files.length == 0) {
+			return null;
+		}
+		Arrays.sort(files);
+		return files[files.length - 1];
+	}
+
+	private static void deleteOlder(File folder, File current) {
+		File[] files = folder.listFiles((dir, name) -> name.endsWith(".tms") || name.endsWith(".tmp"));
+		if (files == null) {
+			return;
+		}
+		for (int i = 0; i < files.length; i++) {
+			if (!files[i].equals(current)) {
+				try {
+					Files.deleteIfExists(files[i].toPath());
+				} catch (IOException e) {
+					// still mapped by another process, deleted with the next snapshot
+				}
+			}
+		}
+	}
+
+	private static File write(long memoryId, File folder, File previous, Set<String> changed)
+			throws IOException, SQLException, SAXException, ParserConfigurationException, URISyntaxException,
+			JSONException {
+		File temp = File.createTempFile("snapshot", ".tmp", folder);
+		ITmEngine engine = LocalController.openTMEngine(memoryId);
+		try (SnapshotWriter writer = new SnapshotWriter(temp)) {
+			if (previous == null) {
+				Set<String> langs = engine.getAllLanguages();
+				if (!langs.isEmpty()) {
+					File tmx = File.createTempFile("snapshot", ".tmx", folder);
+					try {
+						engine.exportMemory(tmx.getAbsolutePath(), langs, "*all*");
+						SAXBuilder builder = new SAXBuilder();
+						builder.setEntityResolver(
+								CatalogBuilder.getCatalog(Preferences.getInstance().getCatalogFile()));
+						builder.setContentHandler(new TmxUnitHandler(writer));
+						builder.build(tmx);
+					} finally {
+						Files.deleteIfExists(tmx.toPath());
+					}
+				}
+			} else {
+				TmSnapshot snapshot = new TmSnapshot("" + memoryId, previous);
+				snapshot.copyUnchanged(writer, changed);
+				Iterator<String> it = changed.iterator();
+				while (it.hasNext()) {
+					String tuid = it.next();
+					if (tuid.isEmpty()) {
+						continue;
+					}
+					Element tu = engine.getTu(tuid);
+					if (tu != null && !tu.getChildren("tuv").isEmpty()) {
+						writer.storeTu(tu);
+					}
+				}
+			}
+			writer.finish();
+		} finally {
+			engine.close();
+		}
+		File target = new File(folder, String.format("%013d.tms", System.currentTimeMillis()));
+		Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		return target;
+	}
+
+	private void copyUnchanged(SnapshotWriter writer, Set<String> changed) throws IOException {
+		int[] units = new int[unitCount];
+		for (int i = 0; i < unitCount; i++) {
+			long position = getLong(unitsIndex + 8L * i);
+			int length = getInt(position);
+			String tuid = new String(getBytes(position + 4, length), StandardCharsets.UTF_8);
+			if (changed.contains(tuid)) {
+				units[i] = -1;
+				continue;
+			}
+			int size = getInt(position + 4 + length);
+			units[i] = writer.addUnit(tuid, getBytes(position + 8 + length, size));
+		}
+		Iterator<Map.Entry<String, Long>> it = languages.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Long> entry = it.next();
+			Section section = new Section(entry.getValue());
+			for (int i = 0; i < section.entries; i++) {
+				int unit = units[section.unit(i)];
+				if (unit != -1) {
+					writer.addText(entry.getKey(), unit, section.text(i));
+				}
+			}
+		}
+	}
+
+	@Override
+	public List<Match> searchTranslation(String searchStr, String srcLang, String tgtLang, int similarity,
+			boolean caseSensitive)
+			throws IOException, SAXException, ParserConfigurationException, SQLException, URISyntaxException {
+		List<Match> result = new Vector<>();
+		String source = LanguageUtils.normalizeCode(srcLang);
+		String target = LanguageUtils.normalizeCode(tgtLang);
+		Long position = languages.get(source);
+		if (position == null || !languages.containsKey(target)) {
+			return result;
+		}
+		Section section = new Section(position);
+		Map<Integer, Integer> matches = section.search(searchStr, similarity, caseSensitive);
+		if (caseSensitive) {
+			// segments with the same text are adjacent, after the one in the table
+			int exact = section.find(searchStr);
+			while (exact != -1 && exact < section.entries && section.text(exact).equals(searchStr)) {
+				matches.putIfAbsent(exact, 100);
+				exact++;
+			}
+		}
+		Iterator<Map.Entry<Integer, Integer>> it = matches.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Integer, Integer> entry = it.next();
+			Element tu = getUnit(section.unit(entry.getKey()));
+			Element srcTuv = null;
+			Element tgtTuv = null;
+			List<Element> tuvs = tu.getChildren("tuv");
+			for (int i = 0; i < tuvs.size(); i++) {
+				Element tuv = tuvs.get(i);
+				String lang = LanguageUtils.normalizeCode(tuv.getAttributeValue("xml:lang"));
+				if (source.equals(lang)) {
+					srcTuv = tuv;
+				} else if (target.equals(lang)) {
+					tgtTuv = tuv;
+				}
+			}
+			if (srcTuv == null || tgtTuv == null) {
+				continue;
+			}
+			Map<String, String> properties = new Hashtable<>();
+			List<Element> props = tu.getChildren("prop");
+			for (int i = 0; i < props.size(); i++) {
+				Element prop = props.get(i);
+				properties.put(prop.getAttributeValue("type"), prop.getText());
+			}
+			result.add(new Match(srcTuv, tgtTuv, entry.getValue(), name, properties));
+		}
+		return result;
+	}
+
+	private Element getUnit(int unit) throws SAXException, IOException, ParserConfigurationException {
+		long position = getLong(unitsIndex + 8L * unit);
+		position += 4 + getInt(position);
+		byte[] xml = getBytes(position + 4, getInt(position));
+		SAXBuilder builder = new SAXBuilder();
+		return builder.build(new ByteArrayInputStream(xml)).getRootElement();
+	}
+
+	/**
+	 * Segments of one language: entries sorted by text, hash table, trigrams,
+	 * posting lists and text.
+	 */
+	private class Section extends TrigramSearch {
+
+		int entries;
+		int capacity;
+		int grams;
+		long entriesStart;
+		long tableStart;
+		long gramsStart;
+		long listsStart;
+		long postingsStart;
+		long textStart;
+
+		Section(long position) {
+			entries = getInt(position);
+			capacity = getInt(position + 4);
+			grams = getInt(position + 8);
+			entriesStart = position + 12;
+			tableStart = entriesStart + (long) ENTRY * entries;
+			gramsStart = tableStart + 4L * capacity;
+			listsStart = gramsStart + 8L * grams;
+			postingsStart = listsStart + 4L * (grams + 1);
+			textStart = postingsStart + 4L * getInt(listsStart + 4L * grams);
+		}
+
+		int unit(int entry) {
+			return getInt(entriesStart + (long) ENTRY * entry);
+		}
+
+		@Override
+		String text(int entry) {
+			long position = entriesStart + (long) ENTRY * entry;
+			return new String(getBytes(textStart + getLong(position + 4), getInt(position + 12)),
+					StandardCharsets.UTF_8);
+		}
+
+		int find(String text) {
+			int slot = text.hashCode() & (capacity - 1);
+			while (true) {
+				int entry = getInt(tableStart + 4L * slot) - 1;
+				if (entry == -1 || text(entry).equals(text)) {
+					return entry;
+				}
+				slot = (slot + 1) & (capacity - 1);
+			}
+		}
+
+		private int gram(long gram) {
+			int low = 0;
+			int high = grams - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				long value = getLong(gramsStart + 8L * middle);
+				if (value < gram) {
+					low = middle + 1;
+				} else if (value > gram) {
+					high = middle - 1;
+				} else {
+					return middle;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		int frequency(long gram) {
+			int index = gram(gram);
+			if (index == -1) {
+				return 0;
+			}
+			return getInt(listsStart + 4L * (index + 1)) - getInt(listsStart + 4L * index);
+		}
+
+		@Override
+		Iterable<Integer> postings(long gram) {
+			int index = gram(gram);
+			int start = getInt(listsStart + 4L * index);
+			int end = getInt(listsStart + 4L * (index + 1));
+			return () -> new Iterator<Integer>() {
+
+				int next = start;
+
+				@Override
+				public boolean hasNext() {
+					return next < end;
+				}
+
+				@Override
+				public Integer next() {
+					return getInt(postingsStart + 4L * next++);
+				}
+			};
+		}
+	}
+
+	private int getInt(long position) {
+		int chunk = (int) (position / CHUNK);
+		int offset = (int) (position % CHUNK);
+		if (offset + 4 <= chunks[chunk].limit()) {
+			return chunks[chunk].getInt(offset);
+		}
+		return ByteBuffer.wrap(getBytes(position, 4)).getInt();
+	}
+
+	private long getLong(long position) {
+		int chunk = (int) (position / CHUNK);
+		int offset = (int) (position % CHUNK);
+		if (offset + 8 <= chunks[chunk].limit()) {
+			return chunks[chunk].getLong(offset);
+		}
+		return ByteBuffer.wrap(getBytes(position, 8)).getLong();
+	}
+
+	private byte[] getBytes(long position, int length) {
+		byte[] result = new byte[length];
+		int done = 0;
+		while (done < length) {
+			int chunk = (int) ((position + done) / CHUNK);
+			int offset = (int) ((position + done) % CHUNK);
+			int count = Math.min(length - done, chunks[chunk].limit() - offset);
+			chunks[chunk].get(offset, result, done, count);
+			done += count;
+		}
+		return result;
+	}
+
+	/**
+	 * Writes a snapshot. Units are written as they arrive; the texts of each
+	 * language are kept in memory and written with their index at the end.
+	 */
+	private static class SnapshotWriter implements TmxUnitHandler.Store, AutoCloseable {
+
+		private File file;
+		private DataOutputStream out;
+		private long position;
+		private long[] offsets;
+		private int units;
+		private Map<String, Texts> languages;
+
+		SnapshotWriter(File file) throws IOException {
+			this.file = file;
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			out.write(new byte[HEADER]);
+			position = HEADER;
+			offsets = new long[1024];
+			languages = new TreeMap<>();
+		}
+
+		@Override
+		public void storeTu(Element tu) throws IOException {
+			String tuid = tu.getAttributeValue("tuid");
+			if (tuid.isEmpty()) {
+				return;
+			}
+			int unit = addUnit(tuid, tu.toString().getBytes(StandardCharsets.UTF_8));
+			List<Element> tuvs = tu.getChildren("tuv");
+			for (int i = 0; i < tuvs.size(); i++) {
+				Element tuv = tuvs.get(i);
+				Element seg = tuv.getChild("seg");
+				String lang = LanguageUtils.normalizeCode(tuv.getAttributeValue("xml:lang"));
+				if (seg != null && lang != null && !lang.isEmpty()) {
+					addText(lang, unit, TMUtils.extractText(seg));
+				}
+			}
+		}
+
+		@Override
+		public void commit() {
+			// written by finish()
+		}
+
+		int addUnit(String tuid, byte[] xml) throws IOException {
+			if (units == offsets.length) {
+				offsets = Arrays.copyOf(offsets, units * 2);
+			}
+			offsets[units] = position;
+			byte[] id = tuid.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(id.length);
+			out.write(id);
+			out.writeInt(xml.length);
+			out.write(xml);
+			position += 8 + id.length + xml.length;
+			return units++;
+		}
+
+		void addText(String lang, int unit, String text) {
+			languages.computeIfAbsent(lang, k -> new Texts()).add(unit, text);
+		}
+
+		void finish() throws IOException {
+			long index = position;
+			for (int i = 0; i < units; i++) {
+				out.writeLong(offsets[i]);
+			}
+			position += 8L * units;
+			Map<String, Long> sections = new TreeMap<>();
+			Iterator<Map.Entry<String, Texts>> it = languages.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<String, Texts> entry = it.next();
+				sections.put(entry.getKey(), position);
+				writeSection(entry.getValue());
+				// the texts of a language are not needed once written
+				it.remove();
+			}
+			long directory = position;
+			Iterator<Map.Entry<String, Long>> st = sections.entrySet().iterator();
+			while (st.hasNext()) {
+				Map.Entry<String, Long> entry = st.next();
+				byte[] lang = entry.getKey().getBytes(StandardCharsets.UTF_8);
+				out.writeInt(lang.length);
+				out.write(lang);
+				out.writeLong(entry.getValue());
+			}
+			out.close();
+			try (RandomAccessFile header = new RandomAccessFile(file, "rw")) {
+				header.writeInt(MAGIC);
+				header.writeInt(VERSION);
+				header.writeInt(units);
+				header.writeInt(sections.size());
+				header.writeLong(index);
+				header.writeLong(directory);
+			}
+		}
+
+		private void writeSection(Texts texts) throws IOException {
+			int count = texts.size;
+			Integer[] order = new Integer[count];
+			for (int i = 0; i < count; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> texts.texts[a].compareTo(texts.texts[b]));
+			int capacity = Integer.highestOneBit(Math.max(1, count)) * 4;
+			int[] table = new int[capacity];
+			TreeMap<Long, int[]> postings = new TreeMap<>();
+			int total = 0;
+			for (int e = 0; e < count; e++) {
+				String text = texts.texts[order[e]];
+				if (e == 0 || !text.equals(texts.texts[order[e - 1]])) {
+					int slot = text.hashCode() & (capacity - 1);
+					while (table[slot] != 0) {
+						slot = (slot + 1) & (capacity - 1);
+					}
+					table[slot] = e + 1;
+				}
+				Iterator<Long> grams = TrigramSearch.trigrams(text).iterator();
+				while (grams.hasNext()) {
+					Long gram = grams.next();
+					int[] list = postings.computeIfAbsent(gram, k -> new int[5]);
+					// list[0] holds the number of entries
+					if (list[0] + 1 == list.length) {
+						list = Arrays.copyOf(list, list.length * 2);
+						postings.put(gram, list);
+					}
+					list[++list[0]] = e;
+					total++;
+				}
+			}
+			out.writeInt(count);
+			out.writeInt(capacity);
+			out.writeInt(postings.size());
+			byte[][] bytes = new byte[count][];
+			long offset = 0;
+			for (int e = 0; e < count; e++) {
+				bytes[e] = texts.texts[order[e]].getBytes(StandardCharsets.UTF_8);
+				out.writeInt(texts.units[order[e]]);
+				out.writeLong(offset);
+				out.writeInt(bytes[e].length);
+				offset += bytes[e].length;
+			}
+			for (int i = 0; i < capacity; i++) {
+				out.writeInt(table[i]);
+			}
+			Iterator<Long> keys = postings.keySet().iterator();
+			while (keys.hasNext()) {
+				out.writeLong(keys.next());
+			}
+			int start = 0;
+			Iterator<int[]> lists = postings.values().iterator();
+			while (lists.hasNext()) {
+				out.writeInt(start);
+				start += lists.next()[0];
+			}
+			out.writeInt(start);
+			lists = postings.values().iterator();
+			while (lists.hasNext()) {
+				int[] list = lists.next();
+				for (int i = 1; i <= list[0]; i++) {
+					out.writeInt(list[i]);
+				}
+			}
+			for (int e = 0; e < count; e++) {
+				out.write(bytes[e]);
+			}
+			position += 12 + (long) ENTRY * count + 4L * capacity + 8L * postings.size()
+					+ 4L * (postings.size() + 1) + 4L * total + offset;
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+
+	private static class Texts {
+
+		int size;
+		int[] units = new int[1024];
+		String[] texts = new String[1024];
+
+		void add(int unit, String text) {
+			if (size == units.length) {
+				units = Arrays.copyOf(units, size * 2);
+				texts = Arrays.copyOf(texts, size * 2);
+			}
+			units[size] = unit;
+			texts[size++] = text;
+		}
+	}
+
+	/**
+	 * Returns the name of the snapshot file, which changes whenever the memory
+	 * changes.
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	@Override
+	public String getType() {
+		return TmSnapshot.class.getName();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public void close() {
+		// the mapping is released when the snapshot is collected
+		chunks = new MappedByteBuffer[0];
+	}
+
+	@Override
+	public int storeTMX(String tmxFile, String project, String customer, String subject) throws IOException {
+		throw new IOException(Messages.getString("TmSnapshot.1"));
+	}
+
+	@Override
+	public void exportMemory(String tmxFile, Set<String> langs, String srcLang) throws IOException {
+		throw new IOException(Messages.getString("TmSnapshot.1"));
+	}
+
+	@Override
+	public Set<String> getAllClients() {
+		return new HashSet<>();
+	}
+
+	@Override
+	public Set<String> getAllLanguages() {
+		return new HashSet<>(languages.keySet());
+	}
+
+	@Override
+	public Set<String> getAllProjects() {
+		return new HashSet<>();
+	}
+
+	@Override
+	public Set<String> getAllSubjects() {
+		return new HashSet<>();
+	}
+
+	@Override
+	public List<Element> searchAll(String searchStr, String srcLang, int similarity, boolean caseSensitive)
+			throws IOException {
+		throw new IOException(Messages.getString("TmSnapshot.1"));
+	}
+
+	@Override
+	public List<Element> concordanceSearch(String searchStr, String srcLang, int limit, boolean isRegexp,
+			boolean caseSensitive) throws IOException {
+		throw new IOException(Messages.getString("TmSnapshot.1"));
+	}
+
+	@Override
+	public void storeTu(Element tu) throws IOException {
+		throw new IOException(Messages.getString("TmSnapshot.1"));
+	}
+
+	@Override
+	public void commit() {
+		// read-only
+	}
+
+	@Override
+	public Element getTu(String tuid) throws IOException {
+		throw new IOException(Messages.getString("TmSnapshot.1"));
+	}
+
+	@Override
+	public void removeTu(String tuid) throws IOException {
+		throw new IOException(Messages.getString("TmSnapshot.1"));
+	}
+
+	@Override
+	public void deleteDatabase() throws IOException {
+		throw new IOException(Messages.getString("TmSnapshot.1"));
+	}
+
+	@Override
+	public JSONArray batchTranslate(JSONObject params) throws IOException {
+		throw new IOException(Messages.getString("TmSnapshot.1"));
+	}
+}
@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.json.JSONException;
+import org.xml.sax.SAXException;
+
+import com.maxprograms.swordfish.tm.ITmEngine;
+import com.maxprograms.utils.Preferences;
+import com.maxprograms.xml.CatalogBuilder;
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.SAXBuilder;
+
+/**
+ * Applies the memory updates of imported XLIFF files in the background. Each
+ * update is saved as a TMX file in <code>memories/queue/&lt;id&gt;</code>
+ * before the import returns, and deleted once it is committed to the memory,
+ * so updates pending when the application stops are applied on the next run.
+ * The worker stores the units it was given, already parsed; only files left by
+ * a previous run are read, one <code>&lt;tu&gt;</code> at a time. All updates
+ * pending for a memory are stored in a single transaction.
+ * <p>
+ * Readers call {@link #flush(long)} before opening a memory, so they see every
+ * update queued before the call. Processes that exit when their work is done,
+ * like the CLI, call {@link #flush()} before exiting.
+ */
+public class TmUpdateQueue {
+
+	private static Logger logger = System.getLogger(TmUpdateQueue.class.getName());
+	private static TmUpdateQueue instance;
+
+	private File folder;
+	private ExecutorService worker;
+	private Map<Long, Object> locks;
+	private Map<File, List<Element>> queued;
+	private int sequence;
+
+	private TmUpdateQueue(File folder) {
+		this.folder = folder;
+		locks = new Hashtable<>();
+		queued = new Hashtable<>();
+		worker = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "TmUpdateQueue");
+			// pending updates are on disk, they do not need to keep the VM alive
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public static synchronized TmUpdateQueue getInstance() throws IOException {
+		if (instance == null) {
+			instance = new TmUpdateQueue(new File(Preferences.getInstance().getMemoriesFolder(), "queue"));
+		}
+		return instance;
+	}
+
+	/**
+	 * Queues the approved segments of an imported document for a memory.
+	 *
+	 * @return the number of segments queued
+	 */
+	public int add(long memoryId, TmxBuilder tmxBuilder, String projectName) throws IOException, SQLException,
+			SAXException, ParserConfigurationException, URISyntaxException, JSONException, ParseException {
+		List<Element> units = tmxBuilder.getUnits(projectName);
+		if (units.isEmpty()) {
+			return 0;
+		}
+		File memoryFolder = new File(folder, "" + memoryId);
+		if (!memoryFolder.exists()) {
+			Files.createDirectories(memoryFolder.toPath());
+		}
+		File temp = File.createTempFile("update", ".tmp", memoryFolder);
+		tmxBuilder.write(temp, units);
+		String name;
+		synchronized (this) {
+			name = String.format("%013d-%06d.tmx", System.currentTimeMillis(), sequence++);
+		}
+		File file = new File(memoryFolder, name);
+		queued.put(file, units);
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			queued.remove(file);
+			throw e;
+		}
+		worker.execute(() -> {
+			try {
+				apply(memoryId);
+			} catch (IOException | SQLException | SAXException | ParserConfigurationException | URISyntaxException
+					| JSONException | ParseException e) {
+				logger.log(Level.WARNING, Messages.getString("TmUpdateQueue.0"), e);
+			}
+		});
+		return units.size();
+	}
+
+	/**
+	 * Stores all updates pending for a memory, waiting for the background worker
+	 * if it is already storing them.
+	 */
+	public void flush(long memoryId) throws IOException, SQLException, SAXException, ParserConfigurationException,
+			URISyntaxException, JSONException, ParseException {
+		apply(memoryId);
+	}
+
+	/**
+	 * Stores the updates pending for all memories, including those left by a
+	 * previous run.
+	 */
+	public void flush() throws IOException, SQLException, SAXException, ParserConfigurationException,
+			URISyntaxException, JSONException, ParseException {
+		File[] memories = folder.listFiles(File::isDirectory);
+		if (memories == null) {
+			return;
+		}
+		for (int i = 0; i < memories.length; i++) {
+			try {
+				flush(Long.parseLong(memories[i].getName()));
+			} catch (NumberFormatException e) {
+				// not a queue folder
+			}
+		}
+	}
+
+	/**
+	 * Stores the pending updates of a memory in one transaction.
+	 */
+	private void apply(long memoryId) throws IOException, SQLException, SAXException, ParserConfigurationException,
+			URISyntaxException, JSONException, ParseException {
+		synchronized (getLock(memoryId)) {
+			File[] pending = new File(folder, "" + memoryId).listFiles((dir, name) -> name.endsWith(".tmx"));
+			if (pending == null || pending.length == 0) {
+				return;
+			}
+			Arrays.sort(pending);
+			ITmEngine database = LocalController.openTMEngine(memoryId);
+			try {
+				for (int i = 0; i < pending.length; i++) {
+					List<Element> list = queued.get(pending[i]);
+					if (list != null) {
+						store(database, list);
+					} else {
+						read(database, pending[i]);
+					}
+				}
+				database.commit();
+			} finally {
+				database.close();
+			}
+			// a crash before this point stores the same units again, replacing them
+			for (int i = 0; i < pending.length; i++) {
+				Files.delete(pending[i].toPath());
+				queued.remove(pending[i]);
+			}
+			new MemoriesManager(Preferences.getInstance().getMemoriesFolder()).setLastUpdate(memoryId, new Date());
+		}
+	}
+
+	private static void store(ITmEngine database, List<Element> units)
+			throws IOException, SQLException, URISyntaxException {
+		for (int i = 0; i < units.size(); i++) {
+			database.storeTu(units.get(i));
+		}
+	}
+
+	private static void read(ITmEngine database, File file)
+			throws IOException, SAXException, ParserConfigurationException, URISyntaxException {
+		SAXBuilder builder = new SAXBuilder();
+		builder.setEntityResolver(CatalogBuilder.getCatalog(Preferences.getInstance().getCatalogFile()));
+		// committed with the other updates of the memory
+		builder.setContentHandler(new TmxUnitHandler(new TmxUnitHandler.Store() {
+
+			@Override
+			public void storeTu(Element tu) throws IOException, SQLException, URISyntaxException {
+				database.storeTu(tu);
+			}
+
+			@Override
+			public void commit() {
+				// nothing to commit
+			}
+		}));
+		builder.build(file);
+	}
+
+	private synchronized Object getLock(long memoryId) {
+		return locks.computeIfAbsent(memoryId, k -> new Object());
+	}
+}
@@ -0,0 +1,408 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+package com.maxprograms.fluenta.controllers;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Vector;
+
+import com.maxprograms.converters.TmxExporter;
+import com.maxprograms.xml.Attribute;
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.PI;
+import com.maxprograms.xml.TextNode;
+import com.maxprograms.xml.XMLNode;
+import com.maxprograms.xml.XMLUtils;
+
+/**
+ * Writes the approved segments of an XLIFF 1.2 document that is already in
+ * memory as TMX, producing the same units as {@link TmxExporter} without
+ * parsing the XLIFF file again, or returns them as TMX units for a memory.
+ */
+public class TmxBuilder {
+
+	private Element root;
+	private String today;
+	private String sourceLang;
+	private String targetLang;
+	private String original;
+	private int fileNumber;
+	private String subject;
+	private String project;
+	private String customer;
+	private String projectName;
+	private int match;
+
+	public TmxBuilder(Element root) {
+		this.root = root;
+		today = TmxExporter.getTmxDate();
+		Element firstFile = root.getChild("file");
+		subject = getPI(firstFile, "subject");
+		project = getPI(firstFile, "project");
+		customer = getPI(firstFile, "customer");
+	}
+
+	/**
+	 * Returns the approved segments as TMX units, tagging with the project name
+	 * those that have no project of their own.
+	 */
+	public List<Element> getUnits(String projectName) {
+		this.projectName = projectName;
+		List<Element> units = new Vector<>();
+		List<Element> files = root.getChildren("file");
+		for (int i = 0; i < files.size(); i++) {
+			Element file = files.get(i);
+			sourceLang = file.getAttributeValue("source-language");
+			targetLang = file.getAttributeValue("target-language");
+			original = "" + file.getAttributeValue("original").hashCode();
+			fileNumber = i;
+			collect(file, units);
+		}
+		return units;
+	}
+
+	public void write(File tmxFile) throws IOException {
+		write(tmxFile, "");
+	}
+
+	/**
+	 * Writes the approved segments as TMX, tagging with the project name those
+	 * that have no project of their own, as {@link #getUnits} does.
+	 *
+	 * @return the number of units written
+	 */
+	public int write(File tmxFile, String projectName) throws IOException {
+		List<Element> units = getUnits(projectName);
+		write(tmxFile, units);
+		return units.size();
+	}
+
+	/**
+	 * Writes units returned by {@link #getUnits} as TMX.
+	 */
+	public void write(File tmxFile, List<Element> units) throws IOException {
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmxFile))) {
+			writeHeader(out);
+			for (int i = 0; i < units.size(); i++) {
+				writeString(out, units.get(i).toString());
+				writeString(out, "\n");
+			}
+			writeString(out, "</body>\n");
+			writeString(out, "</tmx>");
+		}
+	}
+
+	private void writeHeader(OutputStream out) throws IOException {
+		writeString(out, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		writeString(out,
+				"<!DOCTYPE tmx PUBLIC \"-//LISA OSCAR:1998//DTD for Translation Memory eXchange//EN\" \"tmx14.dtd\" >\n");
+		writeString(out, "<tmx version=\"1.4\">\n");
+		writeString(out, "<header \n      creationtool=\"OpenXLIFF\" \n      creationtoolversion=\""
+				+ com.maxprograms.converters.Constants.VERSION + "\" \n      srclang=\""
+				+ root.getChild("file").getAttributeValue("source-language")
+				+ "\" \n      adminlang=\"en\"  \n      datatype=\"xml\" \n      o-tmf=\"XLIFF\" \n      segtype=\"block\"\n>\n</header>\n");
+		writeString(out, "<body>\n");
+	}
+
+	private void collect(Element e, List<Element> units) {
+		List<Element> children = e.getChildren();
+		for (int i = 0; i < children.size(); i++) {
+			Element child = children.get(i);
+			if (child.getName().equals("trans-unit")) {
+				Element tu = buildTu(child);
+				if (tu != null) {
+					units.add(tu);
+				}
+			} else {
+				collect(child, units);
+			}
+		}
+	}
+
+	private Element buildTu(Element unit) {
+		String tuid = original + "-" + fileNumber + "-" + unit.getAttributeValue("id").hashCode();
+		if (!unit.getAttributeValue("approved").equals("yes")) {
+			return null;
+		}
+		Element source = unit.getChild("source");
+		if (source.getContent().isEmpty()) {
+			return null;
+		}
+		Element target = unit.getChild("target");
+		if (target == null) {
+			return null;
+		}
+		String srcLang = source.getAttributeValue("xml:lang");
+		if (srcLang.isEmpty()) {
+			srcLang = sourceLang;
+		}
+		String tgtLang = target.getAttributeValue("xml:lang");
+		if (tgtLang.isEmpty()) {
+			tgtLang = targetLang;
+		}
+		Element tu = new Element("tu");
+		tu.setAttribute("creationtool", "OpenXLIFF Filters");
+		tu.setAttribute("creationtoolversion", com.maxprograms.converters.Constants.VERSION);
+		tu.setAttribute("tuid", tuid);
+		tu.setAttribute("creationdate", today);
+		tu.addContent("\n");
+		if (!customer.isEmpty()) {
+			addProp(tu, "customer", customer);
+		}
+		if (!project.isEmpty()) {
+			addProp(tu, "project", project);
+		} else if (projectName != null && !projectName.isEmpty()) {
+			addProp(tu, "project", projectName);
+		}
+		if (!subject.isEmpty()) {
+			addProp(tu, "subject", subject);
+		}
+		List<Element> notes = unit.getChildren("note");
+		for (int i = 0; i < notes.size(); i++) {
+			Element note = notes.get(i);
+			Element tuNote = new Element("note");
+			String lang = note.getAttributeValue("xml:lang");
+			if (!lang.isEmpty()) {
+				tuNote.setAttribute("xml:lang", lang);
+			}
+			tuNote.setText(note.getText());
+			tu.addContent(tuNote);
+			tu.addContent("\n");
+		}
+		boolean trim = !unit.getAttributeValue("xml:space", "default").equals("preserve");
+		tu.addContent(buildTuv(srcLang, source, trim));
+		tu.addContent("\n");
+		tu.addContent(buildTuv(tgtLang, target, trim));
+		tu.addContent("\n");
+		return tu;
+	}
+
+	private static void addProp(Element tu, String type, String value) {
+		Element prop = new Element("prop");
+		prop.setAttribute("type", type);
+		prop.setText(value);
+		tu.addContent(prop);
+		tu.addContent("\n");
+	}
+
+	private Element buildTuv(String lang, Element text, boolean trim) {
+		Element tuv = new Element("tuv");
+		tuv.setAttribute("xml:lang", lang);
+		tuv.setAttribute("creationdate", today);
+		tuv.addContent("\n");
+		// codes are numbered from 0 in each segment, as TmxExporter does
+		match = 0;
+		List<XMLNode> content = new Vector<>();
+		addContent(content, text);
+		if (trim) {
+			trim(content);
+		}
+		Element seg = new Element("seg");
+		seg.setContent(content);
+		tuv.addContent(seg);
+		tuv.addContent("\n");
+		return tuv;
+	}
+
+	/**
+	 * Adds the text and inline elements of an XLIFF element as TMX content,
+	 * converting them as {@link TmxExporter#extractText} does.
+	 */
+	private void addContent(List<XMLNode> content, Element e) {
+		List<XMLNode> nodes = e.getContent();
+		for (int i = 0; i < nodes.size(); i++) {
+			XMLNode node = nodes.get(i);
+			if (node.getNodeType() == XMLNode.TEXT_NODE) {
+				addText(content, ((TextNode) node).getText());
+			} else if (node.getNodeType() == XMLNode.ELEMENT_NODE) {
+				addInline(content, (Element) node);
+			}
+		}
+	}
+
+	private void addInline(List<XMLNode> content, Element e) {
+		String name = e.getName();
+		if (name.equals("bx") || name.equals("ex") || name.equals("ph")) {
+			Element ph = new Element("ph");
+			setType(ph, e);
+			String assoc = e.getAttributeValue("assoc");
+			if (!assoc.isEmpty()) {
+				ph.setAttribute("assoc", assoc);
+			}
+			String id = e.getAttributeValue("id");
+			if (name.equals("ph") && !id.isEmpty()) {
+				ph.setAttribute("x", "" + XMLUtils.cleanText(id).hashCode());
+			}
+			ph.setContent(getCodes(e));
+			content.add(ph);
+		} else if (name.equals("g") || name.equals("x")) {
+			StringBuilder tag = new StringBuilder();
+			tag.append('<').append(name);
+			List<Attribute> attributes = e.getAttributes();
+			for (int i = 0; i < attributes.size(); i++) {
+				Attribute a = attributes.get(i);
+				tag.append(' ').append(a.getName()).append("=\"").append(a.getValue()).append('"');
+			}
+			if (e.getContent().isEmpty()) {
+				tag.append("/>");
+				content.add(newCode("ph", "xliff-" + name, null, tag.toString()));
+				return;
+			}
+			tag.append('>');
+			String i = "" + match++;
+			content.add(newCode("bpt", "xliff-" + name, i, tag.toString()));
+			addContent(content, e);
+			content.add(newCode("ept", null, i, "</" + name + ">"));
+		} else if (name.equals("it")) {
+			Element it = new Element("it");
+			setType(it, e);
+			String pos = e.getAttributeValue("pos");
+			if (pos.equals("open")) {
+				it.setAttribute("pos", "begin");
+			} else if (pos.equals("close")) {
+				it.setAttribute("pos", "end");
+			}
+			List<XMLNode> codes = new Vector<>();
+			addContent(codes, e);
+			it.setContent(codes);
+			content.add(it);
+		} else if (name.equals("bpt") || name.equals("ept")) {
+			Element code = new Element(name);
+			setType(code, e);
+			String rid = e.getAttributeValue("rid");
+			if (rid.isEmpty()) {
+				rid = e.getAttributeValue("id");
+			}
+			code.setAttribute("i", "" + XMLUtils.cleanText(rid).hashCode());
+			List<XMLNode> codes = new Vector<>();
+			addContent(codes, e);
+			code.setContent(codes);
+			content.add(code);
+		} else if (name.equals("sub")) {
+			Element sub = new Element("sub");
+			sub.setContent(getCodes(e));
+			content.add(sub);
+		} else if (name.equals("mrk")) {
+			String mtype = e.getAttributeValue("mtype", "xliff-mrk");
+			if (mtype.equals("term")) {
+				addText(content, e.getText());
+			} else if (mtype.equals("protected")) {
+				String ts = restoreChars(e.getAttributeValue("ts")).trim();
+				StringBuilder tag = new StringBuilder();
+				for (int i = 1; i < ts.length() && !Character.isSpaceChar(ts.charAt(i)); i++) {
+					tag.append(ts.charAt(i));
+				}
+				Element open = newCode("ph", "mrk-protected", null, ts);
+				open.setAttribute("x", "" + XMLUtils.cleanText(e.getAttributeValue("mid", "-")).hashCode());
+				content.add(open);
+				addText(content, e.getText());
+				content.add(newCode("ph", "mrk-close", null, "</" + tag.toString() + ">"));
+			} else {
+				Element hi = new Element("hi");
+				hi.setAttribute("type", mtype);
+				hi.setText(e.getText());
+				content.add(hi);
+			}
+		}
+	}
+
+	/**
+	 * Returns the content of a native code, leaving out the markers it contains.
+	 */
+	private List<XMLNode> getCodes(Element e) {
+		List<XMLNode> codes = new Vector<>();
+		List<XMLNode> nodes = e.getContent();
+		for (int i = 0; i < nodes.size(); i++) {
+			XMLNode node = nodes.get(i);
+			if (node.getNodeType() == XMLNode.TEXT_NODE) {
+				addText(codes, ((TextNode) node).getText());
+			} else if (node.getNodeType() == XMLNode.ELEMENT_NODE && !((Element) node).getName().equals("mrk")) {
+				addInline(codes, (Element) node);
+			}
+		}
+		return codes;
+	}
+
+	private static void setType(Element code, Element e) {
+		String ctype = e.getAttributeValue("ctype");
+		if (!ctype.isEmpty()) {
+			code.setAttribute("type", ctype);
+		}
+	}
+
+	private static Element newCode(String name, String type, String i, String text) {
+		Element code = new Element(name);
+		if (type != null) {
+			code.setAttribute("type", type);
+		}
+		if (i != null) {
+			code.setAttribute("i", i);
+		}
+		code.setText(text);
+		return code;
+	}
+
+	private static void addText(List<XMLNode> content, String text) {
+		if (text.isEmpty()) {
+			return;
+		}
+		if (!content.isEmpty() && content.get(content.size() - 1) instanceof TextNode last) {
+			last.setText(last.getText() + text);
+		} else {
+			content.add(new TextNode(text));
+		}
+	}
+
+	private static void trim(List<XMLNode> content) {
+		if (!content.isEmpty() && content.get(0) instanceof TextNode first) {
+			String text = first.getText();
+			int start = 0;
+			while (start < text.length() && text.charAt(start) <= ' ') {
+				start++;
+			}
+			first.setText(text.substring(start));
+		}
+		if (!content.isEmpty() && content.get(content.size() - 1) instanceof TextNode last) {
+			String text = last.getText();
+			int end = text.length();
+			while (end > 0 && text.charAt(end - 1) <= ' ') {
+				end--;
+			}
+			last.setText(text.substring(0, end));
+		}
+		content.removeIf(node -> node instanceof TextNode text && text.getText().isEmpty());
+	}
+
+	private static String restoreChars(String string) {
+		String result = string.replace(TmxExporter.MATHLT, "<");
+		result = result.replace(TmxExporter.MATHGT, ">");
+		result = result.replace(TmxExporter.DOUBLEPRIME, "\"");
+		return result.replace(TmxExporter.GAMP, "&");
+	}
+
+	private static String getPI(Element file, String target) {
+		List<PI> list = file.getPI(target);
+		if (list.isEmpty()) {
+			return "";
+		}
+		return list.get(0).getData();
+	}
+
+	private static void writeString(OutputStream out, String string) throws IOException {
+		out.write(string.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.text.MessageFormat;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.SAXException;
+
+import com.maxprograms.converters.ILogger;
+import com.maxprograms.languages.LanguageUtils;
+import com.maxprograms.swordfish.tm.ITmEngine;
+import com.maxprograms.swordfish.tm.TMUtils;
+import com.maxprograms.utils.FileUtils;
+import com.maxprograms.utils.Preferences;
+import com.maxprograms.xml.CatalogBuilder;
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.SAXBuilder;
+
+/**
+ * Loads a TMX file into a memory engine in three stages: one thread reads the
+ * file a <code>&lt;tu&gt;</code> at a time, a pool of worker threads normalizes
+ * batches of {@value #BATCH_SIZE} units and the calling thread stores each
+ * batch in a single transaction.
+ * <p>
+ * Batches are stored in file order and only a few are kept in memory at a
+ * time, so files of any size are loaded with bounded memory. Language codes
+ * are normalized, variants without text are dropped and units without
+ * <code>tuid</code> get one derived from their text, so that importing the
+ * same file twice does not duplicate them.
+ */
+public class TmxImporter {
+
+	public static final int BATCH_SIZE = 10000;
+
+	private static final List<Element> END = new Vector<>();
+
+	private ITmEngine engine;
+	private ILogger logger;
+	private int threads;
+	private Map<String, String> codes;
+
+	public TmxImporter(ITmEngine engine, ILogger logger) throws IOException {
+		this.engine = engine;
+		this.logger = logger;
+		threads = ResourceGovernor.getInstance().getMaxThreads();
+		codes = new Hashtable<>();
+	}
+
+	/**
+	 * Imports the units of a TMX file and returns the number of units stored.
+	 */
+	public int importFile(File tmx)
+			throws IOException, SQLException, SAXException, ParserConfigurationException, URISyntaxException {
+		// the language registry is loaded on first use
+		LanguageUtils.normalizeCode("en");
+		MessageFormat stage = new MessageFormat(Messages.getString("TmxImporter.0"));
+		logger.setStage(stage.format(new String[] { tmx.getName() }));
+		BlockingQueue<Future<List<Element>>> queue = new ArrayBlockingQueue<>(threads * 2);
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		ExecutorService reader = Executors.newSingleThreadExecutor();
+		long start = System.currentTimeMillis();
+		int count = 0;
+		try {
+			Future<Void> parser = reader.submit(() -> {
+				try {
+					read(tmx, workers, queue);
+				} finally {
+					queue.put(CompletableFuture.completedFuture(END));
+				}
+				return null;
+			});
+			MessageFormat progress = new MessageFormat(Messages.getString("TmxImporter.1"));
+			while (true) {
+				List<Element> batch = queue.take().get();
+				if (batch == END) {
+					break;
+				}
+				if (logger.isCancelled()) {
+					throw new IOException(Messages.getString("LocalController.12"));
+				}
+				Iterator<Element> it = batch.iterator();
+				while (it.hasNext()) {
+					engine.storeTu(it.next());
+				}
+				engine.commit();
+				count += batch.size();
+				logger.log(progress.format(new String[] { "" + count, "" + rate(count, start) }));
+			}
+			parser.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException ioe) {
+				throw ioe;
+			}
+			if (cause instanceof SAXException se) {
+				throw se;
+			}
+			throw new IOException(cause.getMessage(), cause);
+		} finally {
+			reader.shutdownNow();
+			workers.shutdownNow();
+		}
+		MessageFormat mf = new MessageFormat(Messages.getString("TmxImporter.2"));
+		logger.log(mf.format(new String[] { "" + count, "" + (System.currentTimeMillis() - start) / 1000,
+				"" + rate(count, start) }));
+		return count;
+	}
+
+	private static long rate(int count, long start) {
+		long elapsed = Math.max(1l, System.currentTimeMillis() - start);
+		return count * 1000l / elapsed;
+	}
+
+	private void read(File tmx, ExecutorService workers, BlockingQueue<Future<List<Element>>> queue)
+			throws IOException, SAXException, ParserConfigurationException, URISyntaxException, SQLException {
+		TmxUnitHandler.Store store = new TmxUnitHandler.Store() {
+
+			private List<Element> batch = new Vector<>();
+
+			@Override
+			public void storeTu(Element tu) {
+				batch.add(tu);
+			}
+
+			@Override
+			public void commit() throws IOException {
+				if (batch.isEmpty()) {
+					return;
+				}
+				List<Element> units = batch;
+				batch = new Vector<>();
+				try {
+					// blocks while the writer is behind
+					queue.put(workers.submit(() -> normalize(units)));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(e);
+				}
+			}
+		};
+		TmxUnitHandler handler = new TmxUnitHandler(store, BATCH_SIZE);
+		SAXBuilder builder = new SAXBuilder();
+		builder.setEntityResolver(CatalogBuilder.getCatalog(Preferences.getInstance().getCatalogFile()));
+		builder.setContentHandler(handler);
+		builder.build(tmx);
+		store.commit();
+	}
+
+	private List<Element> normalize(List<Element> units) throws IOException {
+		List<Element> result = new Vector<>();
+		Iterator<Element> it = units.iterator();
+		while (it.hasNext()) {
+			Element tu = it.next();
+			List<Element> tuvs = new Vector<>();
+			StringBuilder content = new StringBuilder();
+			List<Element> children = tu.getChildren("tuv");
+			for (int i = 0; i < children.size(); i++) {
+				Element tuv = children.get(i);
+				Element seg = tuv.getChild("seg");
+				String lang = normalize(tuv.getAttributeValue("xml:lang"));
+				if (seg == null || lang.isEmpty()) {
+					continue;
+				}
+				String text = TMUtils.extractText(seg);
+				if (text.isBlank()) {
+					continue;
+				}
+				tuv.setAttribute("xml:lang", lang);
+				tuvs.add(tuv);
+				content.append(lang).append('\u0000').append(text).append('\u0000');
+			}
+			if (tuvs.isEmpty()) {
+				continue;
+			}
+			if (tuvs.size() != children.size()) {
+				List<Element> props = tu.getChildren("prop");
+				List<Element> notes = tu.getChildren("note");
+				tu.setContent(new Vector<>());
+				props.forEach(tu::addContent);
+				notes.forEach(tu::addContent);
+				tuvs.forEach(tu::addContent);
+			}
+			if (tu.getAttributeValue("tuid").isEmpty()) {
+				tu.setAttribute("tuid", FileUtils.checksum(content.toString().getBytes(StandardCharsets.UTF_8)));
+			}
+			result.add(tu);
+		}
+		return result;
+	}
+
+	private String normalize(String code) throws IOException {
+		if (code.isEmpty()) {
+			return code;
+		}
+		String normalized = codes.get(code);
+		if (normalized == null) {
+			normalized = LanguageUtils.normalizeCode(code);
+			if (normalized == null) {
+				normalized = "";
+			}
+			codes.put(code, normalized);
+		}
+		return normalized;
+	}
+}
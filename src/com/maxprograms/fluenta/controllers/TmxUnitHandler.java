@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+import com.maxprograms.xml.Catalog;
+import com.maxprograms.xml.Document;
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.IContentHandler;
+
+/**
+ * Reads a TMX file one <code>&lt;tu&gt;</code> at a time and hands each unit
+ * to a {@link Store}, committing every {@value #COMMIT_INTERVAL} units by
+ * default, so that files of any size are loaded without building the whole
+ * document.
+ */
+public class TmxUnitHandler implements IContentHandler {
+
+	public static final int COMMIT_INTERVAL = 500;
+
+	/**
+	 * Receives the units read from a TMX file.
+	 */
+	public interface Store {
+
+		void storeTu(Element tu) throws IOException, SQLException, URISyntaxException;
+
+		void commit() throws SQLException, IOException, URISyntaxException;
+	}
+
+	private Store store;
+	private Element current;
+	private Deque<Element> stack;
+	private int count;
+	private int interval;
+
+	public TmxUnitHandler(Store store) {
+		this(store, COMMIT_INTERVAL);
+	}
+
+	/**
+	 * Creates a handler that commits every <code>interval</code> units, for
+	 * stores that load large transactions faster.
+	 */
+	public TmxUnitHandler(Store store, int interval) {
+		this.store = store;
+		this.interval = interval;
+		stack = new ArrayDeque<>();
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+		if (current == null) {
+			if (!qName.equals("tu")) {
+				return;
+			}
+			current = new Element(qName);
+		} else {
+			Element child = new Element(qName);
+			if (!qName.equals("ut")) {
+				current.addContent(child);
+			}
+			stack.addFirst(current);
+			current = child;
+		}
+		for (int i = 0; i < atts.getLength(); i++) {
+			current.setAttribute(atts.getQName(i), atts.getValue(i));
+		}
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		if (current == null) {
+			return;
+		}
+		if (stack.isEmpty()) {
+			try {
+				store.storeTu(current);
+				count++;
+				if (count % interval == 0) {
+					store.commit();
+				}
+			} catch (IOException | SQLException | URISyntaxException e) {
+				throw new SAXException(e);
+			}
+			current = null;
+		} else {
+			current = stack.removeFirst();
+		}
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		if (current != null) {
+			current.addContent(new String(ch, start, length));
+		}
+	}
+
+	@Override
+	public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+		// ignore
+	}
+
+	@Override
+	public void setDocumentLocator(Locator locator) {
+		// not used
+	}
+
+	@Override
+	public void startDocument() throws SAXException {
+		// not used
+	}
+
+	@Override
+	public void endDocument() throws SAXException {
+		stack.clear();
+	}
+
+	@Override
+	public void startPrefixMapping(String prefix, String uri) throws SAXException {
+		// not used
+	}
+
+	@Override
+	public void endPrefixMapping(String prefix) throws SAXException {
+		// not used
+	}
+
+	@Override
+	public void processingInstruction(String target, String data) throws SAXException {
+		// not used
+	}
+
+	@Override
+	public void skippedEntity(String name) throws SAXException {
+		// not used
+	}
+
+	@Override
+	public void startDTD(String name, String publicId, String systemId) throws SAXException {
+		// not used
+	}
+
+	@Override
+	public void endDTD() throws SAXException {
+		// not used
+	}
+
+	@Override
+	public void startEntity(String name) throws SAXException {
+		// not used
+	}
+
+	@Override
+	public void endEntity(String name) throws SAXException {
+		// not used
+	}
+
+	@Override
+	public void startCDATA() throws SAXException {
+		// not used
+	}
+
+	@Override
+	public void endCDATA() throws SAXException {
+		// not used
+	}
+
+	@Override
+	public void comment(char[] ch, int start, int length) throws SAXException {
+		// not used
+	}
+
+	@Override
+	public void setCatalog(Catalog catalog) {
+		// not used
+	}
+
+	@Override
+	public Document getDocument() {
+		return null;
+	}
+}
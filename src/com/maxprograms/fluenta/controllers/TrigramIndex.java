@@ -0,0 +1,380 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.Vector;
+
+import org.mapdb.Atomic;
+import org.mapdb.BTreeKeySerializer;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Fun;
+import org.mapdb.Fun.Tuple2;
+import org.mapdb.Fun.Tuple3;
+import org.mapdb.Serializer;
+
+import com.maxprograms.languages.LanguageUtils;
+import com.maxprograms.swordfish.tm.TMUtils;
+import com.maxprograms.utils.FileUtils;
+import com.maxprograms.xml.Element;
+
+/**
+ * Character trigram index of the segments of a memory, one MapDB file per
+ * language in <code>memories/&lt;id&gt;/trigrams</code>, searched with
+ * {@link TrigramSearch} using the text stored in the index.
+ * <p>
+ * The postings of the units stored between two commits are kept in memory and
+ * written as one block per trigram, so that loading a large file writes a few
+ * records per trigram instead of one per unit and trigram. Postings of removed
+ * units stay in their blocks and are skipped because their text is gone.
+ * <p>
+ * An index that was not completely built, or that was built with another
+ * {@link #FORMAT}, is discarded when opened. Engines call {@link #clearReady()}
+ * before committing their own changes and {@link #setReady()} after, so that
+ * an index left behind its memory by a crash between the two commits is
+ * discarded as well.
+ */
+public class TrigramIndex implements TmxUnitHandler.Store {
+
+	static final String FORMAT = "1";
+
+	private File folder;
+	private File readyFile;
+	private Map<String, DB> databases;
+	private Map<String, Batch> pending;
+
+	/**
+	 * Postings and frequency changes of one language not yet written.
+	 */
+	private static class Batch {
+		Map<Long, List<Integer>> postings = new TreeMap<>();
+		Map<Long, Integer> frequencies = new HashMap<>();
+	}
+
+	public TrigramIndex(File folder) throws IOException {
+		this.folder = folder;
+		readyFile = new File(folder, "ready");
+		if (folder.exists() && !isReady(readyFile)) {
+			FileUtils.deleteFolder(folder);
+		}
+		if (!folder.exists()) {
+			Files.createDirectories(folder.toPath());
+		}
+		databases = new Hashtable<>();
+		pending = new Hashtable<>();
+	}
+
+	public boolean isReady() throws IOException {
+		return isReady(readyFile);
+	}
+
+	private static boolean isReady(File readyFile) throws IOException {
+		return readyFile.exists()
+				&& FORMAT.equals(Files.readString(readyFile.toPath(), StandardCharsets.UTF_8).trim());
+	}
+
+	/**
+	 * Commits the index and marks it as matching the memory.
+	 */
+	public void setReady() throws IOException {
+		commit();
+		Files.writeString(readyFile.toPath(), FORMAT, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Marks the index as behind its memory until {@link #setReady()} is called.
+	 */
+	public void clearReady() throws IOException {
+		Files.deleteIfExists(readyFile.toPath());
+	}
+
+	private DB getDatabase(String lang, boolean create) throws IOException {
+		if (!databases.containsKey(lang)) {
+			File file = new File(folder, lang);
+			if (!create && !file.exists()) {
+				return null;
+			}
+			try {
+				databases.put(lang, DBMaker.newFileDB(file).make());
+			} catch (Error e) {
+				throw new IOException(e.getMessage(), e);
+			}
+		}
+		return databases.get(lang);
+	}
+
+	@Override
+	public void storeTu(Element tu) throws IOException {
+		String tuid = tu.getAttributeValue("tuid");
+		if (tuid.isEmpty()) {
+			return;
+		}
+		List<Element> tuvs = tu.getChildren("tuv");
+		Iterator<Element> it = tuvs.iterator();
+		while (it.hasNext()) {
+			Element tuv = it.next();
+			Element seg = tuv.getChild("seg");
+			if (seg == null) {
+				continue;
+			}
+			String lang = LanguageUtils.normalizeCode(tuv.getAttributeValue("xml:lang"));
+			if (lang == null || lang.isEmpty()) {
+				continue;
+			}
+			add(lang, tuid, TMUtils.extractText(seg));
+		}
+	}
+
+	private void add(String lang, String tuid, String text) throws IOException {
+		DB db = getDatabase(lang, true);
+		Map<String, Integer> ids = db.getHashMap("ids");
+		Map<Integer, Tuple3<String, String, Integer>> units = db.getTreeMap("units");
+		Batch batch = pending.computeIfAbsent(lang, k -> new Batch());
+		Integer old = ids.get(tuid);
+		if (old != null) {
+			remove(units, batch, old);
+		}
+		Atomic.Integer next = db.getAtomicInteger("next");
+		int unit = next.incrementAndGet();
+		Set<Long> set = TrigramSearch.trigrams(text);
+		units.put(unit, Fun.t3(tuid, text, set.size()));
+		ids.put(tuid, unit);
+		Iterator<Long> it = set.iterator();
+		while (it.hasNext()) {
+			Long gram = it.next();
+			batch.postings.computeIfAbsent(gram, k -> new Vector<>()).add(unit);
+			batch.frequencies.merge(gram, 1, Integer::sum);
+		}
+	}
+
+	private void flush(String lang, DB db) {
+		Batch batch = pending.remove(lang);
+		if (batch == null) {
+			return;
+		}
+		Map<Tuple2<Long, Integer>, int[]> blocks = getBlocks(db);
+		int block = db.getAtomicInteger("block").incrementAndGet();
+		Iterator<Map.Entry<Long, List<Integer>>> it = batch.postings.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Long, List<Integer>> entry = it.next();
+			List<Integer> list = entry.getValue();
+			int[] array = new int[list.size()];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = list.get(i);
+			}
+			blocks.put(Fun.t2(entry.getKey(), block), array);
+		}
+		Map<Long, Integer> frequencies = db.getHashMap("frequencies");
+		Iterator<Map.Entry<Long, Integer>> ft = batch.frequencies.entrySet().iterator();
+		while (ft.hasNext()) {
+			Map.Entry<Long, Integer> entry = ft.next();
+			if (entry.getValue() != 0) {
+				frequencies.merge(entry.getKey(), entry.getValue(), (a, b) -> a + b > 0 ? a + b : null);
+			}
+		}
+	}
+
+	private static NavigableMap<Tuple2<Long, Integer>, int[]> getBlocks(DB db) {
+		// large values are kept out of the tree nodes so that adding a block does
+		// not rewrite the blocks next to it
+		return db.createTreeMap("blocks").valuesOutsideNodesEnable().keySerializer(BTreeKeySerializer.TUPLE2)
+				.valueSerializer(Serializer.INT_ARRAY).makeOrGet();
+	}
+
+	/**
+	 * Returns the ids of the units that have a segment in one of the given
+	 * languages, reading them from the index one at a time. A unit found in a
+	 * language is skipped in the languages read after it.
+	 */
+	public Iterator<String> getUnits(Set<String> languages) throws IOException {
+		List<Map<String, Integer>> maps = new Vector<>();
+		Iterator<String> it = languages.iterator();
+		while (it.hasNext()) {
+			DB db = getDatabase(LanguageUtils.normalizeCode(it.next()), false);
+			if (db != null) {
+				maps.add(db.getHashMap("ids"));
+			}
+		}
+		return new Iterator<>() {
+
+			private int current;
+			private Iterator<String> keys = maps.isEmpty() ? null : maps.get(0).keySet().iterator();
+			private String next = advance();
+
+			private String advance() {
+				while (keys != null) {
+					while (keys.hasNext()) {
+						String tuid = keys.next();
+						if (!seen(tuid)) {
+							return tuid;
+						}
+					}
+					current++;
+					keys = current < maps.size() ? maps.get(current).keySet().iterator() : null;
+				}
+				return null;
+			}
+
+			private boolean seen(String tuid) {
+				for (int i = 0; i < current; i++) {
+					if (maps.get(i).containsKey(tuid)) {
+						return true;
+					}
+				}
+				return false;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public String next() {
+				if (next == null) {
+					throw new NoSuchElementException();
+				}
+				String result = next;
+				next = advance();
+				return result;
+			}
+		};
+	}
+
+	private List<DB> getDatabases() throws IOException {
+		List<DB> result = new Vector<>();
+		File[] files = folder.listFiles((dir, name) -> !name.equals("ready") && !name.contains("."));
+		if (files != null) {
+			for (int i = 0; i < files.length; i++) {
+				result.add(getDatabase(files[i].getName(), false));
+			}
+		}
+		return result;
+	}
+
+	public void remove(String tuid) throws IOException {
+		File[] files = folder.listFiles((dir, name) -> !name.equals("ready") && !name.contains("."));
+		if (files == null) {
+			return;
+		}
+		for (int i = 0; i < files.length; i++) {
+			String lang = files[i].getName();
+			DB db = getDatabase(lang, false);
+			Map<String, Integer> ids = db.getHashMap("ids");
+			Integer unit = ids.remove(tuid);
+			if (unit != null) {
+				remove(db.getTreeMap("units"), pending.computeIfAbsent(lang, k -> new Batch()), unit);
+			}
+		}
+	}
+
+	private static void remove(Map<Integer, Tuple3<String, String, Integer>> units, Batch batch, Integer unit) {
+		Tuple3<String, String, Integer> data = units.remove(unit);
+		if (data != null) {
+			Iterator<Long> it = TrigramSearch.trigrams(data.b).iterator();
+			while (it.hasNext()) {
+				batch.frequencies.merge(it.next(), -1, Integer::sum);
+			}
+		}
+	}
+
+	/**
+	 * Returns the units whose text in the given language has at least the
+	 * requested similarity, best first, as a map of unit id to similarity.
+	 */
+	public Map<String, Integer> search(String text, String lang, int similarity, boolean caseSensitive)
+			throws IOException {
+		Map<String, Integer> result = new LinkedHashMap<>();
+		String code = LanguageUtils.normalizeCode(lang);
+		DB db = getDatabase(code, false);
+		if (db == null) {
+			return result;
+		}
+		flush(code, db);
+		Map<Integer, Tuple3<String, String, Integer>> units = db.getTreeMap("units");
+		NavigableMap<Tuple2<Long, Integer>, int[]> blocks = getBlocks(db);
+		Map<Long, Integer> frequencies = db.getHashMap("frequencies");
+		TrigramSearch search = new TrigramSearch() {
+
+			@Override
+			int frequency(long gram) {
+				return frequencies.getOrDefault(gram, 0);
+			}
+
+			@Override
+			Iterable<Integer> postings(long gram) {
+				List<Integer> list = new Vector<>();
+				// null sorts before any block number
+				Iterator<int[]> it = blocks.subMap(Fun.t2(gram, null), Fun.t2(gram + 1, null)).values().iterator();
+				while (it.hasNext()) {
+					int[] block = it.next();
+					for (int i = 0; i < block.length; i++) {
+						list.add(block[i]);
+					}
+				}
+				return list;
+			}
+
+			@Override
+			String text(int unit) {
+				Tuple3<String, String, Integer> data = units.get(unit);
+				return data != null ? data.b : null;
+			}
+		};
+		Map<Integer, Integer> matches = search.search(text, similarity, caseSensitive);
+		Iterator<Map.Entry<Integer, Integer>> it = matches.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Integer, Integer> entry = it.next();
+			result.put(units.get(entry.getKey()).a, entry.getValue());
+		}
+		return result;
+	}
+
+	@Override
+	public void commit() {
+		Iterator<Map.Entry<String, DB>> it = databases.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, DB> entry = it.next();
+			flush(entry.getKey(), entry.getValue());
+			entry.getValue().commit();
+		}
+	}
+
+	public void close() {
+		commit();
+		Iterator<DB> it = databases.values().iterator();
+		while (it.hasNext()) {
+			it.next().close();
+		}
+		databases.clear();
+	}
+
+	public void delete() throws IOException {
+		close();
+		FileUtils.deleteFolder(folder);
+	}
+}
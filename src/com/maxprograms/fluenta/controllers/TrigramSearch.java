@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.Vector;
+
+import com.maxprograms.swordfish.tm.MatchQuality;
+
+/**
+ * Fuzzy search over a character trigram index, shared by the
+ * {@link TrigramIndex} of a memory and its {@link TmSnapshot}.
+ * <p>
+ * Posting lists are read from the rarest trigram to the most frequent; once
+ * {@value #MAX_POSTINGS} entries were read, the remaining trigrams are only
+ * counted for the units that share most of the rare ones. The units are ranked
+ * by trigram overlap and the exact similarity is computed only for the best
+ * {@value #MAX_CANDIDATES}.
+ */
+abstract class TrigramSearch {
+
+	static final int MAX_CANDIDATES = 50;
+	static final int MAX_POSTINGS = 20000;
+
+	/**
+	 * Returns the number of units that contain the trigram.
+	 */
+	abstract int frequency(long gram) throws IOException;
+
+	abstract Iterable<Integer> postings(long gram) throws IOException;
+
+	/**
+	 * Returns the indexed text of a unit, or <code>null</code> if the unit was
+	 * removed.
+	 */
+	abstract String text(int unit) throws IOException;
+
+	/**
+	 * Returns the units whose text has at least the requested similarity, best
+	 * first, as a map of unit to similarity.
+	 */
+	Map<Integer, Integer> search(String text, int similarity, boolean caseSensitive) throws IOException {
+		Map<Integer, Integer> result = new LinkedHashMap<>();
+		if (text.isBlank()) {
+			return result;
+		}
+		Set<Long> query = trigrams(text);
+		Map<Long, Integer> frequencies = new HashMap<>();
+		List<Long> sorted = new Vector<>();
+		Iterator<Long> it = query.iterator();
+		while (it.hasNext()) {
+			Long gram = it.next();
+			int frequency = frequency(gram);
+			if (frequency > 0) {
+				frequencies.put(gram, frequency);
+				sorted.add(gram);
+			}
+		}
+		sorted.sort((a, b) -> Integer.compare(frequencies.get(a), frequencies.get(b)));
+		Map<Integer, Integer> shared = new HashMap<>();
+		int read = 0;
+		int scanned = 0;
+		while (scanned < sorted.size()) {
+			Long gram = sorted.get(scanned);
+			read += frequencies.get(gram);
+			if (scanned > 0 && read > MAX_POSTINGS) {
+				break;
+			}
+			for (Integer unit : postings(gram)) {
+				shared.merge(unit, 1, Integer::sum);
+			}
+			scanned++;
+		}
+		int skipped = sorted.size() - scanned;
+		// each edit changes at most three trigrams, so units that share fewer
+		// cannot reach the requested similarity
+		int length = text.length();
+		int edits = (int) Math.ceil(length * (100 - similarity) / 100.0);
+		int minShared = Math.max(1, query.size() - 3 * edits);
+		int minLength = length * similarity / 100;
+		int maxLength = similarity > 0 ? length * 100 / similarity : Integer.MAX_VALUE;
+
+		// units sharing most of the rare trigrams, counted again on their text
+		PriorityQueue<int[]> first = new PriorityQueue<>((x, y) -> Integer.compare(x[1], y[1]));
+		Iterator<Map.Entry<Integer, Integer>> entries = shared.entrySet().iterator();
+		while (entries.hasNext()) {
+			Map.Entry<Integer, Integer> entry = entries.next();
+			if (entry.getValue() + skipped < minShared) {
+				continue;
+			}
+			first.add(new int[] { entry.getKey(), entry.getValue() });
+			if (first.size() > 4 * MAX_CANDIDATES) {
+				first.poll();
+			}
+		}
+		PriorityQueue<Object[]> best = new PriorityQueue<>((x, y) -> Double.compare((double) x[2], (double) y[2]));
+		while (!first.isEmpty()) {
+			int unit = first.poll()[0];
+			String candidate = text(unit);
+			if (candidate == null || candidate.length() < minLength || candidate.length() > maxLength) {
+				continue;
+			}
+			Set<Long> grams = trigrams(candidate);
+			int count = 0;
+			Iterator<Long> gt = grams.iterator();
+			while (gt.hasNext()) {
+				if (query.contains(gt.next())) {
+					count++;
+				}
+			}
+			if (count < minShared) {
+				continue;
+			}
+			best.add(new Object[] { unit, candidate, 2.0 * count / (query.size() + grams.size()) });
+			if (best.size() > MAX_CANDIDATES) {
+				best.poll();
+			}
+		}
+
+		PriorityQueue<int[]> matches = new PriorityQueue<>((x, y) -> Integer.compare(y[1], x[1]));
+		String source = caseSensitive ? text : text.toLowerCase();
+		while (!best.isEmpty()) {
+			Object[] candidate = best.poll();
+			String target = caseSensitive ? (String) candidate[1] : ((String) candidate[1]).toLowerCase();
+			int quality = MatchQuality.similarity(source, target);
+			if (quality >= similarity) {
+				matches.add(new int[] { (int) candidate[0], quality });
+			}
+		}
+		while (!matches.isEmpty()) {
+			int[] match = matches.poll();
+			result.put(match[0], match[1]);
+		}
+		return result;
+	}
+
+	static Set<Long> trigrams(String text) {
+		Set<Long> result = new TreeSet<>();
+		String normalized = " " + text.toLowerCase().replaceAll("\\s+", " ").trim() + " ";
+		for (int i = 0; i + 3 <= normalized.length(); i++) {
+			long gram = ((long) normalized.charAt(i) << 32) | ((long) normalized.charAt(i + 1) << 16)
+					| normalized.charAt(i + 2);
+			result.add(gram);
+		}
+		return result;
+	}
+}
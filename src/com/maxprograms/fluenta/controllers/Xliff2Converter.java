@@ -0,0 +1,448 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import com.maxprograms.xliff2.FromXliff2;
+import com.maxprograms.xml.Attribute;
+import com.maxprograms.xml.Document;
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.Indenter;
+import com.maxprograms.xml.PI;
+import com.maxprograms.xml.XMLNode;
+
+/**
+ * Converts a parsed XLIFF 2.x document to XLIFF 1.2 in memory. The result is
+ * the document that {@link FromXliff2} writes, without reading or writing
+ * files.
+ * <p>
+ * Indentation uses {@link Indenter}, which keeps static state; callers must not
+ * run conversions at the same time as other OpenXLIFF converters.
+ */
+public class Xliff2Converter {
+
+	private String srcLang;
+	private String trgLang;
+
+	public Document convert(Document xliff2) {
+		Document doc = new Document(null, "xliff", null, null);
+		Element root = doc.getRootElement();
+		recurse(xliff2.getRootElement(), root);
+		Indenter.indent(root, 2);
+		return doc;
+	}
+
+	private void recurse(Element source, Element current) {
+		if (source.getName().equals("xliff")) {
+			current.setAttribute("version", "1.2");
+			current.setAttribute("xmlns:xsi", "http://www.w3.org/2001/XMLSchema-instance");
+			current.setAttribute("xsi:schemaLocation",
+					"urn:oasis:names:tc:xliff:document:1.2 xliff-core-1.2-transitional.xsd");
+			current.setAttribute("xmlns", "urn:oasis:names:tc:xliff:document:1.2");
+			srcLang = source.getAttributeValue("srcLang");
+			trgLang = source.getAttributeValue("trgLang");
+			List<PI> instructions = source.getPI();
+			for (int i = 0; i < instructions.size(); i++) {
+				PI pi = instructions.get(i);
+				if ("encoding".equals(pi.getTarget())) {
+					String encoding = pi.getData();
+					if (!encoding.equalsIgnoreCase(StandardCharsets.UTF_8.name())) {
+						current.addContent(new PI("encoding", encoding));
+					}
+				} else {
+					current.addContent(pi);
+				}
+			}
+		}
+		if (source.getName().equals("file")) {
+			current = convertFile(source, current);
+		}
+		if (source.getName().equals("group")) {
+			Element group = new Element("group");
+			group.setAttribute("id", source.getAttributeValue("id"));
+			Element metadata = source.getChild("mda:metadata");
+			if (metadata != null) {
+				Element metaGroup = metadata.getChild("mda:metaGroup");
+				if (metaGroup != null) {
+					List<Element> metaList = metaGroup.getChildren("mda:meta");
+					for (int i = 0; i < metaList.size(); i++) {
+						Element meta = metaList.get(i);
+						if (meta.getAttributeValue("type").equals("ts")) {
+							group.setAttribute("ts", meta.getText());
+						}
+						if (meta.getAttributeValue("type").equals("space") && meta.getText().equals("keep")) {
+							group.setAttribute("xml:space", "preserve");
+						}
+					}
+				}
+			}
+			current.addContent(group);
+			current = group;
+		}
+		if (source.getName().equals("unit")) {
+			convertUnit(source, current);
+		}
+		List<Element> children = source.getChildren();
+		for (int i = 0; i < children.size(); i++) {
+			recurse(children.get(i), current);
+		}
+	}
+
+	private Element convertFile(Element source, Element current) {
+		Element file = new Element("file");
+		file.setAttribute("original", source.getAttributeValue("original"));
+		file.setAttribute("source-language", srcLang);
+		if (!trgLang.isEmpty()) {
+			file.setAttribute("target-language", trgLang);
+		}
+		List<Attribute> atts = source.getAttributes();
+		for (int i = 0; i < atts.size(); i++) {
+			if (atts.get(i).getName().startsWith("xmlns:")) {
+				file.setAttribute(atts.get(i));
+			}
+		}
+		Element header = new Element("header");
+		file.addContent(header);
+		Element body = new Element("body");
+		file.addContent(body);
+		Element skeleton = source.getChild("skeleton");
+		if (skeleton != null) {
+			Element skl = new Element("skl");
+			String href = skeleton.getAttributeValue("href");
+			if (!href.isEmpty()) {
+				Element external = new Element("external-file");
+				external.setAttribute("href", href);
+				skl.addContent(external);
+			} else {
+				Element internal = new Element("internal-file");
+				internal.setContent(skeleton.getContent());
+				skl.addContent(internal);
+			}
+			header.addContent(skl);
+		}
+		Element metadata = source.getChild("mda:metadata");
+		if (metadata != null) {
+			List<Element> groups = metadata.getChildren("mda:metaGroup");
+			for (int i = 0; i < groups.size(); i++) {
+				Element metaGroup = groups.get(i);
+				String category = metaGroup.getAttributeValue("category");
+				List<Element> metaList = metaGroup.getChildren("mda:meta");
+				switch (category) {
+					case "tool":
+						Element tool = new Element("tool");
+						header.addContent(tool);
+						for (int j = 0; j < metaList.size(); j++) {
+							tool.setAttribute(metaList.get(j).getAttributeValue("type"), metaList.get(j).getText());
+						}
+						file.setAttribute("tool-id", tool.getAttributeValue("tool-id"));
+						break;
+					case "PI":
+						for (int j = 0; j < metaList.size(); j++) {
+							file.addContent(new PI(metaList.get(j).getAttributeValue("type"), metaList.get(j).getText()));
+						}
+						break;
+					case "project-data":
+						for (int j = 0; j < metaList.size(); j++) {
+							Element meta = metaList.get(j);
+							String type = meta.getAttributeValue("type");
+							if (type.equals("product-name")) {
+								file.setAttribute("product-name", meta.getText());
+							}
+							if (type.equals("project-id")) {
+								file.setAttribute("product-version", meta.getText());
+							}
+							if (type.equals("build-number")) {
+								file.setAttribute("build-num", meta.getText());
+							}
+						}
+						break;
+					case "format":
+						file.setAttribute("datatype", metaGroup.getChild("mda:meta").getText());
+						break;
+					default:
+						Element propGroup = new Element("prop-group");
+						propGroup.setAttribute("name", category);
+						header.addContent(propGroup);
+						for (int j = 0; j < metaList.size(); j++) {
+							Element prop = new Element("prop");
+							prop.setAttribute("prop-type", metaList.get(j).getAttributeValue("type"));
+							prop.setContent(metaList.get(j).getContent());
+							propGroup.addContent(prop);
+						}
+				}
+			}
+		}
+		current.addContent(file);
+		return body;
+	}
+
+	private static void convertUnit(Element source, Element current) {
+		Element transUnit = new Element("trans-unit");
+		transUnit.setAttribute("id", source.getAttributeValue("id"));
+		if ("no".equals(source.getAttributeValue("translate"))) {
+			transUnit.setAttribute("translate", "no");
+		}
+		List<Attribute> atts = source.getAttributes();
+		for (int i = 0; i < atts.size(); i++) {
+			String name = atts.get(i).getName();
+			if (name.indexOf(':') != -1 && !name.startsWith("xml:")) {
+				transUnit.setAttribute(atts.get(i));
+			}
+		}
+		current.addContent(transUnit);
+
+		Map<String, String> data = new Hashtable<>();
+		Element originalData = source.getChild("originalData");
+		if (originalData != null) {
+			List<Element> list = originalData.getChildren("data");
+			for (int i = 0; i < list.size(); i++) {
+				data.put(list.get(i).getAttributeValue("id"), list.get(i).getText());
+			}
+		}
+		Map<String, List<String[]>> attributes = new Hashtable<>();
+		Element metadata = source.getChild("mda:metadata");
+		if (metadata != null) {
+			List<Element> groups = metadata.getChildren("mda:metaGroup");
+			for (int i = 0; i < groups.size(); i++) {
+				Element metaGroup = groups.get(i);
+				List<Element> metaList = metaGroup.getChildren("mda:meta");
+				if ("attributes".equals(metaGroup.getAttributeValue("category"))) {
+					List<String[]> list = new Vector<>();
+					for (int j = 0; j < metaList.size(); j++) {
+						list.add(new String[] { metaList.get(j).getAttributeValue("type"), metaList.get(j).getText() });
+					}
+					attributes.put(metaGroup.getAttributeValue("id"), list);
+				}
+				if ("transUnitAttributes".equals(metaGroup.getAttributeValue("category"))) {
+					for (int j = 0; j < metaList.size(); j++) {
+						transUnit.setAttribute(metaList.get(j).getAttributeValue("type"), metaList.get(j).getText());
+					}
+				}
+			}
+		}
+
+		Element joinedSource = new Element("source");
+		Element joinedTarget = new Element("target");
+		boolean approved = false;
+		boolean preserve = false;
+		boolean hasTarget = false;
+		List<Element> children = source.getChildren();
+		for (int i = 0; i < children.size(); i++) {
+			Element child = children.get(i);
+			if (child.getName().equals("segment") || child.getName().equals("ignorable")) {
+				Element src = child.getChild("source");
+				if (src.getAttributeValue("xml:space", "default").equals("preserve")) {
+					preserve = true;
+				}
+				joinedSource.addContent(src.getContent());
+				Element tgt = child.getChild("target");
+				if (tgt != null) {
+					hasTarget = true;
+					joinedTarget.addContent(tgt.getContent());
+				}
+				if (tgt == null && child.getName().equals("ignorable")) {
+					joinedTarget.addContent(src.getContent());
+				}
+				if (child.getName().equals("segment") && "final".equals(child.getAttributeValue("state"))) {
+					approved = true;
+				}
+			}
+		}
+		if (approved) {
+			transUnit.setAttribute("approved", "yes");
+		}
+		if (preserve) {
+			transUnit.setAttribute("xml:space", "preserve");
+		}
+		joinedSource = FromXliff2.removeComments(joinedSource);
+		joinedTarget = FromXliff2.removeComments(joinedTarget);
+
+		Element src = new Element("source");
+		src.setContent(harvestContent(joinedSource, data, attributes));
+		if (preserve) {
+			transUnit.addContent("\n        ");
+		}
+		transUnit.addContent(src);
+		Element tgt = new Element("target");
+		if (!joinedTarget.getContent().isEmpty()) {
+			tgt.setContent(harvestContent(joinedTarget, data, attributes));
+		}
+		if (hasTarget) {
+			if (preserve) {
+				transUnit.addContent("\n        ");
+			}
+			transUnit.addContent(tgt);
+		}
+
+		Element notes = source.getChild("notes");
+		if (notes != null) {
+			List<Element> list = notes.getChildren("note");
+			for (int i = 0; i < list.size(); i++) {
+				Element note = new Element("note");
+				String appliesTo = list.get(i).getAttributeValue("appliesTo");
+				if (!appliesTo.isEmpty()) {
+					note.setAttribute("annotates", appliesTo);
+				}
+				note.addContent(list.get(i).getText());
+				if (preserve) {
+					transUnit.addContent("\n        ");
+				}
+				transUnit.addContent(note);
+			}
+		}
+
+		Element matches = source.getChild("mtc:matches");
+		if (matches != null) {
+			List<Element> list = matches.getChildren("mtc:match");
+			for (int i = 0; i < list.size(); i++) {
+				Element match = list.get(i);
+				Element altTrans = new Element("alt-trans");
+				String quality = match.getAttributeValue("matchQuality");
+				if (!quality.isEmpty()) {
+					try {
+						altTrans.setAttribute("match-quality", "" + Math.round(Float.parseFloat(quality)));
+					} catch (NumberFormatException e) {
+						// ignore invalid quality
+					}
+				}
+				altTrans.setAttribute("origin", match.getAttributeValue("origin", "unknown"));
+				Element matchData = match.getChild("originalData");
+				if (matchData != null) {
+					List<Element> dataList = matchData.getChildren("data");
+					for (int j = 0; j < dataList.size(); j++) {
+						String id = dataList.get(j).getAttributeValue("id");
+						if (!data.containsKey(id)) {
+							data.put(id, dataList.get(j).getText());
+						}
+					}
+				}
+				Element altSource = new Element("source");
+				altSource.setContent(harvestContent(match.getChild("source"), data, attributes));
+				altTrans.addContent(altSource);
+				Element altTarget = new Element("target");
+				altTarget.setContent(harvestContent(match.getChild("target"), data, attributes));
+				altTrans.addContent(altTarget);
+				if (preserve) {
+					transUnit.addContent("\n        ");
+				}
+				transUnit.addContent(altTrans);
+			}
+		}
+		if (preserve) {
+			transUnit.addContent("\n      ");
+		}
+		Indenter.indent(transUnit, 2);
+	}
+
+	private static List<XMLNode> harvestContent(Element e, Map<String, String> data,
+			Map<String, List<String[]>> attributes) {
+		List<XMLNode> result = new Vector<>();
+		List<XMLNode> content = e.getContent();
+		for (int i = 0; i < content.size(); i++) {
+			XMLNode node = content.get(i);
+			if (node.getNodeType() == XMLNode.TEXT_NODE) {
+				result.add(node);
+			}
+			if (node.getNodeType() == XMLNode.ELEMENT_NODE) {
+				result.add(processInline((Element) node, data, attributes));
+			}
+		}
+		return result;
+	}
+
+	private static Element processInline(Element e, Map<String, String> data,
+			Map<String, List<String[]>> attributes) {
+		Element result = null;
+		if ("ph".equals(e.getName())) {
+			String id = e.getAttributeValue("id");
+			String[] prefixes = { "ph", "x", "bpt", "ept", "it", "bx", "ex" };
+			for (int i = 0; i < prefixes.length; i++) {
+				String prefix = prefixes[i];
+				if (id.startsWith(prefix)) {
+					Element tag = new Element(prefix);
+					tag.setAttribute("id", id.substring(prefix.length()));
+					if (!prefix.equals("x")) {
+						tag.addContent(data.get(id));
+					}
+					if (attributes.containsKey(id)) {
+						List<String[]> list = attributes.get(id);
+						for (int j = 0; j < list.size(); j++) {
+							tag.setAttribute(list.get(j)[0], list.get(j)[1]);
+						}
+					}
+					result = tag;
+				}
+			}
+			if (result == null) {
+				result = new Element("ph");
+				result.setAttribute("id", id);
+				String dataRef = e.getAttributeValue("dataRef");
+				if (data.containsKey(dataRef)) {
+					result.addContent(data.get(dataRef));
+				}
+			}
+		}
+		if ("pc".equals(e.getName())) {
+			String id = e.getAttributeValue("id");
+			Element g = new Element("g");
+			g.setAttribute("id", id.substring("g".length()));
+			g.setContent(harvestContent(e, data, attributes));
+			result = g;
+		}
+		if ("mrk".equals(e.getName())) {
+			Element mrk = new Element("mrk");
+			String id = e.getAttributeValue("id");
+			if (id.startsWith("mrk")) {
+				mrk.setAttribute("mid", id.substring("mrk".length()));
+			}
+			String value = e.getAttributeValue("value");
+			if (!value.isEmpty()) {
+				mrk.setAttribute("ts", value);
+			}
+			if (e.getAttributeValue("translate", "yes").equals("no")) {
+				mrk.setAttribute("mtype", "protected");
+			} else {
+				String mtype = "x-other";
+				String type = e.getAttributeValue("type");
+				if (type.startsWith("oxlf:")) {
+					mtype = type.substring("oxlf:".length()).replace("_", ":");
+				}
+				mrk.setAttribute("mtype", mtype);
+			}
+			mrk.setContent(harvestContent(e, data, attributes));
+			result = mrk;
+		}
+		if ("sc".equals(e.getName())) {
+			result = new Element("bpt");
+			result.setAttribute("id", e.getAttributeValue("id"));
+			String dataRef = e.getAttributeValue("dataRef");
+			if (data.containsKey(dataRef)) {
+				result.addContent(data.get(dataRef));
+			}
+		}
+		if ("ec".equals(e.getName())) {
+			result = new Element("ept");
+			result.setAttribute("id", e.getAttributeValue("id"));
+			String dataRef = e.getAttributeValue("dataRef");
+			if (data.containsKey(dataRef)) {
+				result.addContent(data.get(dataRef));
+			}
+		}
+		return result;
+	}
+}
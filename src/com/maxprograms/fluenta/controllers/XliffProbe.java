@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the tool, project, build and target language of an XLIFF file from
+ * the header of its first <code>&lt;file&gt;</code>, without loading the
+ * document, so that files that do not belong to a project are rejected before
+ * they are parsed.
+ * <p>
+ * XLIFF 1.2 files are read up to the <code>&lt;tool&gt;</code> element of the
+ * first header, XLIFF 2.x files up to the end of the metadata of the first
+ * file.
+ */
+public class XliffProbe {
+
+	private String version = "";
+	private String toolId;
+	private String projectId = "";
+	private String build = "";
+	private String targetLanguage = "";
+
+	private XliffProbe() {
+		// use probe()
+	}
+
+	public static XliffProbe probe(File xliff) throws IOException {
+		XMLInputFactory factory = XMLInputFactory.newFactory();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+		XliffProbe probe = new XliffProbe();
+		try (InputStream in = new FileInputStream(xliff)) {
+			XMLStreamReader reader = factory.createXMLStreamReader(in);
+			try {
+				probe.read(reader);
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException(Messages.getString("LocalController.25"), e);
+		}
+		return probe;
+	}
+
+	private void read(XMLStreamReader reader) throws XMLStreamException, IOException {
+		boolean root = true;
+		boolean inFile = false;
+		String metaType = null;
+		StringBuilder metaText = new StringBuilder();
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String name = localName(reader);
+				if (root) {
+					if (!name.equals("xliff")) {
+						throw new IOException(Messages.getString("LocalController.31"));
+					}
+					version = attribute(reader, "version");
+					if (!version.equals("1.2") && !version.startsWith("2.")) {
+						throw new IOException(Messages.getString("LocalController.25"));
+					}
+					targetLanguage = attribute(reader, "trgLang");
+					root = false;
+					continue;
+				}
+				if (name.equals("file")) {
+					if (inFile) {
+						return;
+					}
+					inFile = true;
+					if (version.equals("1.2")) {
+						targetLanguage = attribute(reader, "target-language");
+						projectId = attribute(reader, "product-version");
+						build = attribute(reader, "build-num");
+					}
+				} else if (name.equals("tool") && version.equals("1.2")) {
+					toolId = attribute(reader, "tool-id");
+					return;
+				} else if (name.equals("body") || name.equals("unit") || name.equals("group")) {
+					return;
+				} else if (name.equals("meta")) {
+					metaType = attribute(reader, "type");
+					metaText.setLength(0);
+				}
+			} else if (event == XMLStreamConstants.CHARACTERS && metaType != null) {
+				metaText.append(reader.getText());
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				String name = localName(reader);
+				if (name.equals("meta") && metaType != null) {
+					switch (metaType) {
+						case "tool-id":
+							toolId = metaText.toString().trim();
+							break;
+						case "project-id":
+							projectId = metaText.toString().trim();
+							break;
+						case "build-number":
+							build = metaText.toString().trim();
+							break;
+						default:
+							// not needed
+					}
+					metaType = null;
+				} else if (name.equals("metadata") || name.equals("header")) {
+					return;
+				}
+			}
+		}
+	}
+
+	private static String localName(XMLStreamReader reader) {
+		String name = reader.getLocalName();
+		return name.substring(name.indexOf(':') + 1);
+	}
+
+	private static String attribute(XMLStreamReader reader, String name) {
+		String value = reader.getAttributeValue(null, name);
+		return value != null ? value : "";
+	}
+
+	/**
+	 * Throws an exception if the file was not generated by OpenXLIFF.
+	 */
+	public void checkTool() throws IOException {
+		if (toolId == null) {
+			throw new IOException(Messages.getString("LocalController.32"));
+		}
+		if (!toolId.equals("OpenXLIFF")) {
+			throw new IOException(Messages.getString("LocalController.33"));
+		}
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	public String getProjectId() {
+		return projectId;
+	}
+
+	public String getBuild() {
+		return build;
+	}
+
+	public String getTargetLanguage() {
+		return targetLanguage;
+	}
+}
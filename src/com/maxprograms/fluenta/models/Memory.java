@@ -29,6 +29,8 @@ import com.maxprograms.languages.LanguageUtils;
 public class Memory {
 
 	public static final int VERSION = 1;
+	public static final String SQLITE = "SQLite";
+	public static final String MAPDB = "MapDB";
 
 	private long id;
 	private String name;
@@ -36,6 +38,7 @@ public class Memory {
 	private Date creationDate;
 	private Date lastUpdate;
 	private Language srcLanguage;
+	private String engine;
 
 	public Memory(long id, String name, String description, Date creationDate, Date lastUpdate, Language srcLanguage) {
 		this.id = id;
@@ -44,6 +47,7 @@ public class Memory {
 		this.creationDate = creationDate;
 		this.lastUpdate = lastUpdate;
 		this.srcLanguage = srcLanguage;
+		this.engine = SQLITE;
 	}
 
 	public Memory(JSONObject json)
@@ -55,6 +59,7 @@ public class Memory {
 		this.creationDate = df.parse(json.getString("creationDate"));
 		this.lastUpdate = df.parse(json.getString("lastUpdate"));
 		this.srcLanguage = LanguageUtils.getLanguage(json.getString("srcLanguage"));
+		this.engine = json.optString("engine", SQLITE);
 	}
 
 	public JSONObject toJSON() {
@@ -66,6 +71,7 @@ public class Memory {
 		json.put("creationDate", df.format(creationDate));
 		json.put("lastUpdate", df.format(lastUpdate));
 		json.put("srcLanguage", srcLanguage.getCode());
+		json.put("engine", engine);
 		return json;
 	}
 
@@ -97,7 +103,19 @@ public class Memory {
 		this.lastUpdate = lastUpdate;
 	}
 
+	public Date getLastUpdate() {
+		return lastUpdate;
+	}
+
 	public Language getSrcLanguage() {
 		return srcLanguage;
 	}
+
+	public String getEngine() {
+		return engine;
+	}
+
+	public void setEngine(String engine) {
+		this.engine = engine;
+	}
 }
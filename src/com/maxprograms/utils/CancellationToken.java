@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.utils;
+
+public class CancellationToken {
+
+	private volatile boolean cancelled;
+	private volatile long deadline = Long.MAX_VALUE;
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	public void setTimeout(long millis) {
+		if (millis > 0) {
+			deadline = System.currentTimeMillis() + millis;
+		}
+	}
+
+	public boolean isExpired() {
+		return System.currentTimeMillis() > deadline;
+	}
+
+	public boolean isCancelled() {
+		return cancelled || isExpired();
+	}
+}
@@ -16,8 +16,14 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -59,6 +65,67 @@ public class FileUtils {
 		}
 	}
 
+	public static void deleteFolder(File folder) throws IOException {
+		File[] list = folder.listFiles();
+		if (list != null) {
+			for (int i = 0; i < list.length; i++) {
+				File f = list[i];
+				if (f.isDirectory()) {
+					deleteFolder(f);
+				} else {
+					Files.delete(f.toPath());
+				}
+			}
+		}
+		Files.deleteIfExists(folder.toPath());
+	}
+
+	/**
+	 * Moves a file, replacing the target in a single rename so that readers
+	 * never see a partially written file. Across file systems the file is first
+	 * copied next to the target.
+	 */
+	public static void moveFile(File source, File target) throws IOException {
+		File parent = target.getAbsoluteFile().getParentFile();
+		if (!parent.exists()) {
+			Files.createDirectories(parent.toPath());
+		}
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			File temp = File.createTempFile("move", ".tmp", parent);
+			Files.copy(source.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			Files.delete(source.toPath());
+		}
+	}
+
+	public static String checksum(File file) throws IOException {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] buffer = new byte[8192];
+			try (InputStream in = Files.newInputStream(file.toPath())) {
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					digest.update(buffer, 0, read);
+				}
+			}
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	public static String checksum(byte[] bytes) throws IOException {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
 	private static void copyFile(File source, File target) throws IOException {
 		if (!target.getParentFile().exists()) {
 			target.getParentFile().mkdirs();
@@ -22,9 +22,15 @@ public class SimpleLogger implements ILogger{
 	String error;
 	private boolean success;
 	private boolean verbose;
+	private CancellationToken token;
 	
 	public SimpleLogger(boolean verbose) {
+		this(verbose, new CancellationToken());
+	}
+
+	public SimpleLogger(boolean verbose, CancellationToken token) {
 		this.verbose = verbose;
+		this.token = token;
 	}
 	
 	@Override
@@ -43,7 +49,7 @@ public class SimpleLogger implements ILogger{
 
 	@Override
 	public boolean isCancelled() {
-		return false;
+		return token.isCancelled();
 	}
 
 	@Override
@@ -82,4 +88,8 @@ public class SimpleLogger implements ILogger{
 	public String getError() {
 		return error;
 	}
+
+	public CancellationToken getToken() {
+		return token;
+	}
 }
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.maxprograms.swordfish.tm.Match;
+import com.maxprograms.utils.FileUtils;
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.SAXBuilder;
+
+public class MapDbEngineTest {
+
+	private File folder;
+
+	@Before
+	public void setUp() throws IOException {
+		folder = Files.createTempDirectory("mapdb").toFile();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteFolder(folder);
+	}
+
+	private static Element unit(String tuid, String source, String target) throws Exception {
+		String xml = "<tu tuid=\"" + tuid + "\"><prop type=\"project\">Manual</prop><tuv xml:lang=\"en\"><seg>"
+				+ source + "</seg></tuv><tuv xml:lang=\"es\"><seg>" + target + "</seg></tuv></tu>";
+		SAXBuilder builder = new SAXBuilder();
+		return builder.build(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))).getRootElement();
+	}
+
+	private MapDbEngine createEngine() throws Exception {
+		MapDbEngine engine = new MapDbEngine("test", folder);
+		engine.storeTu(unit("1", "Click the Open button to open the file", "Haga clic en Abrir"));
+		engine.storeTu(unit("2", "Close the file", "Cierre el archivo"));
+		engine.commit();
+		return engine;
+	}
+
+	@Test
+	public void testSearch() throws Exception {
+		MapDbEngine engine = createEngine();
+		List<Match> matches = engine.searchTranslation("Close the file", "en", "es", 100, true);
+		assertEquals(1, matches.size());
+		assertEquals(100, matches.get(0).getSimilarity());
+		matches = engine.searchTranslation("Click the Open button to open a file", "en", "es", 70, true);
+		assertEquals(1, matches.size());
+		assertEquals(1, engine.concordanceSearch("open", "en", 10, false, false).size());
+		engine.close();
+	}
+
+	@Test
+	public void testLanguagesAndProjects() throws Exception {
+		MapDbEngine engine = createEngine();
+		assertEquals(Set.of("en", "es"), engine.getAllLanguages());
+		assertEquals(Set.of("Manual"), engine.getAllProjects());
+		engine.close();
+	}
+
+	@Test
+	public void testStoreAgainReplacesSegments() throws Exception {
+		MapDbEngine engine = createEngine();
+		engine.storeTu(unit("2", "Save the document", "Guarde el documento"));
+		engine.commit();
+		assertTrue(engine.searchTranslation("Close the file", "en", "es", 100, true).isEmpty());
+		engine.close();
+
+		engine = new MapDbEngine("test", folder);
+		assertEquals(1, engine.searchTranslation("Save the document", "en", "es", 100, true).size());
+		engine.close();
+	}
+
+	@Test
+	public void testRemove() throws Exception {
+		MapDbEngine engine = createEngine();
+		engine.removeTu("1");
+		assertNull(engine.getTu("1"));
+		assertTrue(engine.searchTranslation("Click the Open button to open a file", "en", "es", 70, true).isEmpty());
+		engine.close();
+	}
+
+	@Test
+	public void testExportAndImport() throws Exception {
+		MapDbEngine engine = createEngine();
+		File tmx = new File(folder, "export.tmx");
+		engine.exportMemory(tmx.getAbsolutePath(), engine.getAllLanguages(), "en");
+		engine.close();
+
+		engine = new MapDbEngine("copy", new File(folder, "copy"));
+		assertEquals(2, engine.storeTMX(tmx.getAbsolutePath(), "", "", ""));
+		assertEquals("Cierre el archivo", engine.searchTranslation("Close the file", "en", "es", 100, true).get(0)
+				.getTarget().getChild("seg").getText());
+		engine.close();
+	}
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.maxprograms.utils.FileUtils;
+import com.maxprograms.utils.Preferences;
+import com.maxprograms.utils.TestUtils;
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.SAXBuilder;
+
+public class MatchCacheTest {
+
+	private static final String QUERY = "Click the Open button to open a file";
+
+	private File folder;
+	private File memoryFolder;
+
+	private static Element unit(String tuid, String source, String target) throws Exception {
+		String xml = "<tu tuid=\"" + tuid + "\"><tuv xml:lang=\"en\"><seg>" + source
+				+ "</seg></tuv><tuv xml:lang=\"es\"><seg>" + target + "</seg></tuv></tu>";
+		SAXBuilder builder = new SAXBuilder();
+		return builder.build(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))).getRootElement();
+	}
+
+	private static void resetPreferences() throws ReflectiveOperationException {
+		Method reset = Preferences.class.getDeclaredMethod("resetInstance");
+		reset.setAccessible(true);
+		reset.invoke(null);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		folder = Files.createTempDirectory("matchcache").toFile();
+		File memories = new File(folder, "memories");
+		TestUtils.initPreferences(new File(folder, "projects"), memories);
+		memoryFolder = new File(memories, "7");
+		MapDbEngine engine = new MapDbEngine("7", memoryFolder);
+		engine.storeTu(unit("1", "Click the Open button to open the file", "Haga clic en Abrir"));
+		engine.commit();
+		engine.close();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteFolder(folder);
+		// later tests must not write to the deleted folders
+		resetPreferences();
+	}
+
+	private MatchCache open(String version) throws Exception {
+		return new MatchCache(new MapDbEngine("7", memoryFolder), 7, version);
+	}
+
+	@Test
+	public void testHitAfterReopen() throws Exception {
+		MatchCache cache = open("v1");
+		assertEquals(1, cache.searchTranslation(QUERY, "en", "es", 70, true).size());
+		assertEquals(0, cache.getHits());
+		cache.close();
+
+		cache = open("v1");
+		assertEquals("Haga clic en Abrir",
+				cache.searchTranslation(QUERY, "en", "es", 70, true).get(0).getTarget().getChild("seg").getText());
+		assertEquals(1, cache.getHits());
+		cache.close();
+	}
+
+	@Test
+	public void testThresholdIsPartOfKey() throws Exception {
+		MatchCache cache = open("v1");
+		cache.searchTranslation(QUERY, "en", "es", 70, true);
+		cache.searchTranslation(QUERY, "en", "es", 80, true);
+		assertEquals(0, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		cache.close();
+	}
+
+	@Test
+	public void testNewVersionDiscardsResults() throws Exception {
+		MatchCache cache = open("v1");
+		cache.searchTranslation(QUERY, "en", "es", 70, true);
+		cache.close();
+
+		cache = open("v2");
+		cache.searchTranslation(QUERY, "en", "es", 70, true);
+		assertEquals(0, cache.getHits());
+		cache.close();
+	}
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.maxprograms.converters.Constants;
+import com.maxprograms.converters.Merge;
+import com.maxprograms.fluenta.models.Project;
+import com.maxprograms.languages.Language;
+import com.maxprograms.utils.FileUtils;
+import com.maxprograms.utils.Preferences;
+import com.maxprograms.utils.SimpleLogger;
+import com.maxprograms.utils.TestUtils;
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.SAXBuilder;
+
+public class MergeDriverTest {
+
+	// more topics than MergeDriver needs to split the merge
+	private static final int TOPICS = 20;
+
+	private File folder;
+	private File translated;
+	private String catalog;
+
+	private static void resetPreferences() throws ReflectiveOperationException {
+		Method reset = Preferences.class.getDeclaredMethod("resetInstance");
+		reset.setAccessible(true);
+		reset.invoke(null);
+	}
+
+	private static void writeMap(File ditaFolder) throws IOException {
+		StringBuilder map = new StringBuilder();
+		map.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		map.append("<!DOCTYPE map PUBLIC \"-//OASIS//DTD DITA Map//EN\" \"map.dtd\">\n");
+		map.append("<map title=\"Merge Test\">\n");
+		for (int i = 1; i <= TOPICS; i++) {
+			String name = "topic" + i + ".dita";
+			map.append("  <topicref href=\"").append(name).append("\"/>\n");
+			String topic = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+					+ "<!DOCTYPE topic PUBLIC \"-//OASIS//DTD DITA Topic//EN\" \"topic.dtd\">\n"
+					+ "<topic id=\"topic" + i + "\">\n"
+					+ "  <title>Topic " + i + "</title>\n"
+					+ "  <body>\n"
+					+ "    <p>This is paragraph one of topic " + i + " with <b>bold</b> text.</p>\n"
+					+ "    <p>Paragraph two of topic " + i + " ends here.</p>\n"
+					+ "  </body>\n"
+					+ "</topic>\n";
+			Files.writeString(new File(ditaFolder, name).toPath(), topic, StandardCharsets.UTF_8);
+		}
+		map.append("</map>\n");
+		Files.writeString(new File(ditaFolder, "merge.ditamap").toPath(), map.toString(), StandardCharsets.UTF_8);
+	}
+
+	private static List<Path> listFiles(File root) throws IOException {
+		try (Stream<Path> paths = Files.walk(root.toPath())) {
+			return paths.filter(Files::isRegularFile).map(p -> root.toPath().relativize(p)).sorted().toList();
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		folder = Files.createTempDirectory("mergedriver").toFile();
+		File ditaFolder = new File(folder, "dita");
+		Files.createDirectories(ditaFolder.toPath());
+		writeMap(ditaFolder);
+		TestUtils.initPreferences(new File(folder, "projects"), new File(folder, "memories"));
+		catalog = Preferences.getInstance().getCatalogFile();
+
+		LocalController controller = new LocalController();
+		Project project = TestUtils.getOrCreateProjectForDitaMap(1, new File(ditaFolder, "merge.ditamap"),
+				controller, Arrays.asList("de-DE"));
+		File xliffFolder = new File(folder, "xliff");
+		Files.createDirectories(xliffFolder.toPath());
+		controller.generateXliff(project, xliffFolder.getAbsolutePath(),
+				Arrays.asList(new Language("de-DE", "Deutsch")), false, false, false, null, "1.2", true, false,
+				false, false, false, true, new SimpleLogger(false));
+		translated = new File(folder, "translated.xlf");
+		TestUtils.generateTranslatedXliff(new File(xliffFolder, "merge_de-DE.ditamap.xlf").toPath(),
+				translated.toPath());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteFolder(folder);
+		// later tests must not write to the deleted folders
+		resetPreferences();
+	}
+
+	@Test
+	public void testSameOutputAsMerge() throws Exception {
+		Element root = new SAXBuilder().build(translated).getRootElement();
+		assertTrue(root.getChildren("file").size() >= TOPICS);
+
+		File expected = new File(folder, "expected");
+		List<String> result = Merge.merge(translated.getAbsolutePath(), expected.getAbsolutePath(), catalog, true);
+		assertEquals(result.toString(), Constants.SUCCESS, result.get(0));
+
+		File actual = new File(folder, "actual");
+		File work = new File(folder, "work");
+		Files.createDirectories(work.toPath());
+		result = new MergeDriver(root, "merge.ditamap", actual.getAbsolutePath(), catalog, true).merge(work,
+				new SimpleLogger(false));
+		assertEquals(result.toString(), Constants.SUCCESS, result.get(0));
+
+		List<Path> files = listFiles(expected);
+		assertEquals(TOPICS + 1, files.size());
+		assertEquals(new TreeSet<>(files), new TreeSet<>(listFiles(actual)));
+		for (int i = 0; i < files.size(); i++) {
+			assertArrayEquals(files.get(i).toString(), Files.readAllBytes(expected.toPath().resolve(files.get(i))),
+					Files.readAllBytes(actual.toPath().resolve(files.get(i))));
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.SAXBuilder;
+
+public class TagValidatorTest {
+
+	private static Element unit(String source, String target) throws Exception {
+		String xml = "<trans-unit id=\"1\"><source>" + source + "</source>"
+				+ (target == null ? "" : "<target>" + target + "</target>") + "</trans-unit>";
+		SAXBuilder builder = new SAXBuilder();
+		return builder.build(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))).getRootElement();
+	}
+
+	@Test
+	public void testMatchingTags() throws Exception {
+		TagValidator validator = new TagValidator();
+		assertTrue(validator.check(unit("a <x id=\"1\"/> b <g id=\"2\">c</g>", "A <x id=\"1\"/> B <g id=\"2\">C</g>"))
+				.isEmpty());
+		assertTrue(validator.check(unit("a <x id=\"1\"/>", null)).isEmpty());
+	}
+
+	@Test
+	public void testCountErrors() throws Exception {
+		TagValidator validator = new TagValidator();
+		assertEquals(Arrays.asList(TagValidator.EXTRA),
+				validator.check(unit("a", "A <x id=\"1\"/>")));
+		assertEquals(Arrays.asList(TagValidator.MISSING),
+				validator.check(unit("a <x id=\"1\"/> <x id=\"2\"/>", "A <x id=\"1\"/>")));
+		assertEquals(Arrays.asList(TagValidator.EMPTY), validator.check(unit("a <x id=\"1\"/>", "A")));
+	}
+
+	@Test
+	public void testPairingAndOrder() throws Exception {
+		TagValidator validator = new TagValidator();
+		List<String> errors = validator.check(unit("<x id=\"1\"/> a <x id=\"2\"/>", "<x id=\"2\"/> A <x id=\"1\"/>"));
+		assertEquals(Arrays.asList(TagValidator.REORDERED, TagValidator.REORDERED), errors);
+		errors = validator.check(unit("<x id=\"1\"/> a <x id=\"2\"/>", "<x id=\"1\"/> A <x id=\"3\"/>"));
+		assertEquals(Arrays.asList(TagValidator.UNPAIRED, TagValidator.REORDERED), errors);
+	}
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.maxprograms.utils.FileUtils;
+import com.maxprograms.xml.Element;
+import com.maxprograms.xml.SAXBuilder;
+
+public class TrigramIndexTest {
+
+	private File folder;
+
+	@Before
+	public void setUp() throws IOException {
+		folder = Files.createTempDirectory("trigrams").toFile();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteFolder(folder);
+	}
+
+	private static Element unit(String tuid, String source, String target) throws Exception {
+		String xml = "<tu tuid=\"" + tuid + "\"><tuv xml:lang=\"en\"><seg>" + source
+				+ "</seg></tuv><tuv xml:lang=\"es\"><seg>" + target + "</seg></tuv></tu>";
+		SAXBuilder builder = new SAXBuilder();
+		return builder.build(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))).getRootElement();
+	}
+
+	private TrigramIndex createIndex() throws Exception {
+		TrigramIndex index = new TrigramIndex(folder);
+		index.storeTu(unit("1", "Click the <ph>&lt;b&gt;</ph>Open button to open the file", "Haga clic en Abrir"));
+		index.storeTu(unit("2", "Select the printer and click Print", "Seleccione la impresora"));
+		index.storeTu(unit("3", "Close the file", "Cierre el archivo"));
+		index.setReady();
+		return index;
+	}
+
+	@Test
+	public void testSearch() throws Exception {
+		TrigramIndex index = createIndex();
+		Map<String, Integer> matches = index.search("Click the Open button to open a file", "en", 70, true);
+		assertEquals(1, matches.size());
+		assertTrue(matches.get("1") >= 70);
+		assertTrue(index.search("Seleccione la impresora", "es", 100, true).containsKey("2"));
+		assertTrue(index.search("Click the Open button", "fr", 70, true).isEmpty());
+		index.close();
+	}
+
+	@Test
+	public void testStoreAgainReplacesText() throws Exception {
+		TrigramIndex index = createIndex();
+		index.storeTu(unit("3", "Save the document", "Guarde el documento"));
+		assertTrue(index.search("Close the file", "en", 70, true).isEmpty());
+		assertTrue(index.search("Save the document", "en", 100, true).containsKey("3"));
+		index.close();
+	}
+
+	@Test
+	public void testRemove() throws Exception {
+		TrigramIndex index = createIndex();
+		index.remove("1");
+		assertTrue(index.search("Click the Open button to open a file", "en", 70, true).isEmpty());
+		index.close();
+	}
+
+	@Test
+	public void testReopen() throws Exception {
+		createIndex().close();
+		TrigramIndex index = new TrigramIndex(folder);
+		assertTrue(index.isReady());
+		assertTrue(index.search("Select the printer and click Print", "en", 90, false).containsKey("2"));
+		index.close();
+	}
+
+	@Test
+	public void testIncompleteIndexIsDiscarded() throws Exception {
+		TrigramIndex index = new TrigramIndex(folder);
+		index.storeTu(unit("1", "Close the file", "Cierre el archivo"));
+		index.close();
+
+		index = new TrigramIndex(folder);
+		assertFalse(index.isReady());
+		assertTrue(index.search("Close the file", "en", 70, true).isEmpty());
+		index.close();
+	}
+
+	@Test
+	public void testClearedIndexIsDiscarded() throws Exception {
+		// an engine that stops between its own commit and the index commit
+		TrigramIndex index = createIndex();
+		index.clearReady();
+		index.close();
+
+		index = new TrigramIndex(folder);
+		assertFalse(index.isReady());
+		assertTrue(index.search("Close the file", "en", 70, true).isEmpty());
+		index.close();
+	}
+
+	@Test
+	public void testOtherFormatIsDiscarded() throws Exception {
+		createIndex().close();
+		Files.writeString(new File(folder, "ready").toPath(), "0", StandardCharsets.UTF_8);
+
+		TrigramIndex index = new TrigramIndex(folder);
+		assertFalse(index.isReady());
+		assertTrue(index.search("Close the file", "en", 70, true).isEmpty());
+		index.close();
+	}
+}
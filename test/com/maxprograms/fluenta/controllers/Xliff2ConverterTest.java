@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.fluenta.controllers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.maxprograms.converters.Constants;
+import com.maxprograms.utils.FileUtils;
+import com.maxprograms.xliff2.FromXliff2;
+import com.maxprograms.xliff2.ToXliff2;
+import com.maxprograms.xml.CatalogBuilder;
+import com.maxprograms.xml.Document;
+import com.maxprograms.xml.SAXBuilder;
+import com.maxprograms.xml.XMLOutputter;
+import com.maxprograms.xml.XMLUtils;
+
+public class Xliff2ConverterTest {
+
+	private static final String XLIFF = """
+			<?xml version="1.0" encoding="UTF-8"?>
+			<xliff version="1.2" xmlns="urn:oasis:names:tc:xliff:document:1.2">
+			<file original="a &amp; b.dita" source-language="en" target-language="de" datatype="xml">
+			<?customer ACME & Co?>
+			<body>
+			<trans-unit id="1" approved="yes"><source>  Hello <g id="1" ctype="bold">bold &amp; <x id="2" ctype="image"/></g> world  </source><target>Hallo <g id="1" ctype="bold">fett</g> Welt <ph id="3" ctype="x-code" assoc="p">&lt;br/&gt;</ph></target><note xml:lang="en">a &lt; note</note><note>plain</note></trans-unit>
+			<trans-unit id="2" approved="yes" xml:space="preserve"><source> <bx id="4" ctype="x-a"/>A<ex id="4"/> <bpt id="5" ctype="bold">&lt;b&gt;</bpt>B<ept id="5">&lt;/b&gt;</ept> <it id="6" pos="open">&lt;i&gt;</it> </source><target><bpt id="5">&lt;b&gt;</bpt>C<ept id="5">&lt;/b&gt;</ept> <mrk mtype="term">Term</mrk> and <mrk mtype="protected" mid="m1" ts="&lt;span&gt;">kept</mrk> end</target></trans-unit>
+			<trans-unit id="3" approved="no"><source>Pending</source><target>Offen</target></trans-unit>
+			<trans-unit id="4"><source>Untranslated</source></trans-unit>
+			<group id="g"><trans-unit id="5" approved="yes"><source>grouped</source><target>gruppiert</target></trans-unit></group>
+			</body>
+			</file>
+			<file original="second.dita" source-language="en" target-language="de" datatype="xml"><body>
+			<trans-unit id="1" approved="yes"><source>two</source><target>zwei</target></trans-unit>
+			</body></file>
+			</xliff>
+			""";
+
+	private File folder;
+	private String catalog;
+
+	@Before
+	public void setUp() throws Exception {
+		folder = Files.createTempDirectory("xliff2").toFile();
+		catalog = new File("catalog/catalog.xml").getAbsolutePath();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteFolder(folder);
+	}
+
+	/**
+	 * Converts an XLIFF 2 file with Xliff2Converter and with FromXliff2 and checks
+	 * that both write the same XLIFF 1.2 document.
+	 */
+	private void assertSameAsFromXliff2(File xliff) throws Exception {
+		File xliff2 = new File(folder, "xliff2.xlf");
+		List<String> result = ToXliff2.run(xliff.getAbsolutePath(), xliff2.getAbsolutePath(), catalog, "2.1");
+		assertEquals(result.toString(), Constants.SUCCESS, result.get(0));
+		File expected = new File(folder, "expected.xlf");
+		result = FromXliff2.run(xliff2.getAbsolutePath(), expected.getAbsolutePath(), catalog);
+		assertEquals(result.toString(), Constants.SUCCESS, result.get(0));
+
+		SAXBuilder builder = new SAXBuilder();
+		builder.setEntityResolver(CatalogBuilder.getCatalog(catalog));
+		Document converted = new Xliff2Converter().convert(builder.build(xliff2));
+		File actual = new File(folder, "actual.xlf");
+		try (FileOutputStream out = new FileOutputStream(actual)) {
+			out.write(XMLUtils.UTF8BOM);
+			XMLOutputter outputter = new XMLOutputter();
+			outputter.preserveSpace(true);
+			outputter.output(converted, out);
+		}
+		assertEquals(builder.build(expected).getRootElement(), builder.build(actual).getRootElement());
+		assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(actual.toPath()));
+	}
+
+	@Test
+	public void testInlineMarkup() throws Exception {
+		File xliff = new File(folder, "source.xlf");
+		Files.writeString(xliff.toPath(), XLIFF, StandardCharsets.UTF_8);
+		assertSameAsFromXliff2(xliff);
+	}
+
+	@Test
+	public void testTranslatedProject() throws Exception {
+		assertSameAsFromXliff2(
+				new File("test-files/dita-sample-project/xliff-translated/translated_sample_de-DE_ditamap.xlf"));
+	}
+}
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2025 Maxprograms.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 1.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/org/documents/epl-v10.html
+ *
+ * Contributors:
+ *     Maxprograms - initial API and implementation
+ *******************************************************************************/
+
+package com.maxprograms.utils;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CancellationTokenTest {
+
+	@Test
+	public void testNewToken_isNotCancelled() {
+		CancellationToken token = new CancellationToken();
+		assertFalse(token.isCancelled());
+		assertFalse(token.isExpired());
+	}
+
+	@Test
+	public void testCancel_isSeenByLogger() {
+		CancellationToken token = new CancellationToken();
+		SimpleLogger logger = new SimpleLogger(false, token);
+		assertFalse(logger.isCancelled());
+		token.cancel();
+		assertTrue(logger.isCancelled());
+	}
+
+	@Test
+	public void testDeadlineInThePast_isCancelled() {
+		CancellationToken token = new CancellationToken();
+		token.setDeadline(System.currentTimeMillis() - 1);
+		assertTrue(token.isExpired());
+		assertTrue(token.isCancelled());
+	}
+
+	@Test
+	public void testZeroTimeout_meansNoDeadline() {
+		CancellationToken token = new CancellationToken();
+		token.setTimeout(0);
+		assertFalse(token.isCancelled());
+	}
+}
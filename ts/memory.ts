@@ -18,4 +18,5 @@ interface Memory {
     srcLanguage: string;
     creationDate: string;
     lastUpdate: string;
+    engine?: string;
 }
\ No newline at end of file